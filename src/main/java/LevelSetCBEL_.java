@@ -90,8 +90,15 @@ public class LevelSetCBEL_ implements PlugInFilter
 		final DataManager dataManager =
 				new DataManager(filePath, gtImgPlus, LSConstants.RESULT_DIRECTORY);
 
+		if (dataManager.getVolumeSource() == null)
+		{
+			IJ.error(LSConstants.ERROR_OPEN_IMAGE);
+			return;
+		}
+
+		// The window shows the volume decoded by the data manager
 		final CustomWindow customWindow =
-				new CustomWindow(LSUtil.readImage(filePath, true), gtImgPlus,
+				new CustomWindow(dataManager.getVolumeSource().createImagePlus(), gtImgPlus,
 						imgPlus.getStackSize() / 3, fileName);
 
 		// Set action listeners
@@ -0,0 +1,432 @@
+package controller;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.process.ByteProcessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.SegmentResult;
+import model.UiOptions;
+import utils.BitMask3D;
+import utils.LSConstants;
+import utils.LSConstants.ContourColor;
+import utils.LSConstants.HoleFillingMethod;
+import utils.LSConstants.LevelsetType;
+import utils.LSConstants.ReinitMethod;
+import utils.LSUtil;
+
+/**
+ * Headless entry point to skull-strip many volumes without the GUI. Usage:
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp ... controller.BatchRunner manifest.txt outputDir [threads]
+ * </pre>
+ *
+ * Each non-empty line of the manifest, except those starting with '#', describes a volume with
+ * tab-separated fields. The first field is the path of the volume, and the rest are key=value
+ * options:
+ * <ul>
+ * <li>gt: paths of the ground truths separated by ';', combined into one ground truth</li>
+ * <li>mask: path of the mask stack to write, default to outputDir/name/mask.tif</li>
+ * <li>velocity, textureCoefficient, threshold, heading, levelsetType, holeFilling, narrowBand,
+ * directionalExtrema, texturePrefetch, speculativeRetry, earlyRejection, adaptiveStop,
+ * iterationBudget, reinitMethod, holeFillingMethod and contourColor as in {@link UiOptions}</li>
+ * </ul>
+ *
+ * The volumes are processed on a pool of the given number of threads, 1 by default. Each volume
+ * writes its contour images and its mask stack into its own result directory, and one row of
+ * metrics per volume is written to outputDir/metrics.csv in the order of the manifest.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class BatchRunner
+{
+
+	private static final String METRICS_FILE = "metrics.csv";
+
+	private static final String MASK_FILE = "mask.tif";
+
+	private static final String METRICS_HEADER =
+			"volume,slices,evolveTimeMs,jaccard,dice,conformity,sensitivity,specificity,fpRate";
+
+	/**
+	 * A volume to process, as described by a line of the manifest.
+	 */
+	static class Entry
+	{
+		String filePath;
+
+		List<String> gtFilePathList = new ArrayList<String>();
+
+		String resultDir;
+
+		UiOptions uiOpts = new UiOptions();
+	}
+
+	private final String outputDir;
+
+	private final int threads;
+
+	public BatchRunner(String outputDir, int threads)
+	{
+		this.outputDir = outputDir;
+		this.threads = threads;
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: BatchRunner <manifest> <outputDir> [threads]");
+			System.exit(2);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+
+		final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+		try
+		{
+			final BatchRunner runner = new BatchRunner(args[1], threads);
+			final int failures = runner.run(runner.readManifest(args[0]));
+
+			System.exit(failures > 0 ? 1 : 0);
+
+		} catch (IOException | IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Read the manifest.
+	 *
+	 * @param manifestPath Path of the manifest.
+	 * @return Entries of the manifest in order.
+	 * @throws IOException If the manifest cannot be read.
+	 */
+	public List<Entry> readManifest(String manifestPath) throws IOException
+	{
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(manifestPath)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+
+				if (!line.isEmpty() && !line.startsWith("#"))
+				{
+					entries.add(parseEntry(line));
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Parse a line of the manifest.
+	 *
+	 * @param line A non-empty line.
+	 * @return An entry.
+	 */
+	Entry parseEntry(String line)
+	{
+		final String[] fields = line.split("\t");
+
+		final Entry entry = new Entry();
+		entry.filePath = fields[0].trim();
+
+		String name = new File(entry.filePath).getName();
+		if (name.lastIndexOf('.') > 0)
+		{
+			name = name.substring(0, name.lastIndexOf('.'));
+		}
+		entry.resultDir = outputDir + File.separator + name;
+
+		final UiOptions uiOpts = entry.uiOpts;
+		uiOpts.setContourColor(ContourColor.Yellow);
+		uiOpts.setOutputMaskFile(entry.resultDir + File.separator + MASK_FILE);
+
+		for (int i = 1; i < fields.length; i++)
+		{
+			final String field = fields[i].trim();
+			final int separator = field.indexOf('=');
+
+			if (separator <= 0)
+			{
+				throw new IllegalArgumentException("Invalid manifest option \"" + field + "\" of "
+						+ entry.filePath);
+			}
+
+			final String key = field.substring(0, separator).trim();
+			final String value = field.substring(separator + 1).trim();
+
+			switch (key)
+			{
+			case "gt":
+				for (String gtPath : value.split(";"))
+				{
+					if (!gtPath.trim().isEmpty())
+					{
+						entry.gtFilePathList.add(gtPath.trim());
+					}
+				}
+				break;
+			case "mask":
+				uiOpts.setOutputMaskFile(value);
+				break;
+			case "velocity":
+				uiOpts.setVelocity(Double.parseDouble(value));
+				break;
+			case "textureCoefficient":
+				uiOpts.setTextureCoefficient(Double.parseDouble(value));
+				break;
+			case "threshold":
+				uiOpts.setThreshold(Double.parseDouble(value));
+				break;
+			case "heading":
+				uiOpts.setHeading(Integer.parseInt(value));
+				break;
+			case "levelsetType":
+				uiOpts.setLevelsetType(LevelsetType.valueOf(value));
+				break;
+			case "holeFilling":
+				uiOpts.setHoleFilling(Boolean.parseBoolean(value));
+				break;
+			case "narrowBand":
+				uiOpts.setNarrowBand(Boolean.parseBoolean(value));
+				break;
+			case "directionalExtrema":
+				uiOpts.setDirectionalExtrema(Boolean.parseBoolean(value));
+				break;
+			case "texturePrefetch":
+				uiOpts.setTexturePrefetch(Boolean.parseBoolean(value));
+				break;
+			case "speculativeRetry":
+				uiOpts.setSpeculativeRetry(Boolean.parseBoolean(value));
+				break;
+			case "earlyRejection":
+				uiOpts.setEarlyRejection(Boolean.parseBoolean(value));
+				break;
+			case "adaptiveStop":
+				uiOpts.setAdaptiveStop(Boolean.parseBoolean(value));
+				break;
+			case "iterationBudget":
+				uiOpts.setIterationBudget(Boolean.parseBoolean(value));
+				break;
+			case "reinitMethod":
+				uiOpts.setReinitMethod(ReinitMethod.valueOf(value));
+				break;
+			case "holeFillingMethod":
+				uiOpts.setHoleFillingMethod(HoleFillingMethod.valueOf(value));
+				break;
+			case "contourColor":
+				uiOpts.setContourColor(ContourColor.valueOf(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown manifest option \"" + key + "\" of "
+						+ entry.filePath);
+			}
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Process the entries on the thread pool and write the metrics.
+	 *
+	 * @param entries Entries of the manifest.
+	 * @return The number of volumes that failed.
+	 * @throws IOException If the metrics file cannot be written.
+	 */
+	public int run(List<Entry> entries) throws IOException
+	{
+		final File dir = new File(outputDir);
+		if (!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException(LSConstants.ERROR_CREATE_RESULT_DIR + ": " + outputDir);
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+
+		final List<Future<SegmentResult>> futures = new ArrayList<Future<SegmentResult>>();
+		for (final Entry entry : entries)
+		{
+			futures.add(executor.submit(new Callable<SegmentResult>()
+			{
+				@Override
+				public SegmentResult call() throws Exception
+				{
+					return process(entry);
+				}
+			}));
+		}
+
+		executor.shutdown();
+
+		int failures = 0;
+
+		try (PrintWriter writer =
+				new PrintWriter(new FileWriter(new File(dir, METRICS_FILE))))
+		{
+			writer.println(METRICS_HEADER);
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				final Entry entry = entries.get(i);
+
+				try
+				{
+					writer.println(formatMetrics(entry, futures.get(i).get()));
+
+				} catch (InterruptedException | ExecutionException e)
+				{
+					failures++;
+
+					final Throwable cause = e.getCause() != null ? e.getCause() : e;
+					IJ.log("Skull stripping of " + entry.filePath + " failed: " + cause);
+					writer.println(escape(entry.filePath) + ",FAILED,,,,,,,");
+				}
+
+				writer.flush();
+			}
+		}
+
+		return failures;
+	}
+
+	/**
+	 * Skull-strip a volume, write its mask stack and evaluate it against the ground truth if any.
+	 */
+	private SegmentResult process(Entry entry)
+	{
+		IJ.log("===== Batch: " + entry.filePath + " =====");
+
+		final ImagePlus gtImgPlus =
+				entry.gtFilePathList.isEmpty() ? null : LSUtil
+						.combineGroundTruth(entry.gtFilePathList);
+
+		final DataManager dataManager = createDataManager(entry, gtImgPlus);
+
+		if (dataManager.getVolumeSource() == null)
+		{
+			throw new IllegalStateException(LSConstants.ERROR_OPEN_IMAGE + ": " + entry.filePath);
+		}
+
+		dataManager.setUiOptions(entry.uiOpts);
+
+		dataManager.loadMetadata(entry.filePath);
+
+		dataManager.createSkullStripper(entry.filePath);
+
+		dataManager.initZeroLS();
+
+		SegmentResult segmentResult = dataManager.evolveVolume();
+
+		if (segmentResult.getSliceCount() == 0)
+		{
+			throw new IllegalStateException(LSConstants.ERROR_RESULT_EMPTY);
+		}
+
+		exportMasks(dataManager.createMaskVolume(), entry.uiOpts.getOutputMaskFile());
+
+		if (gtImgPlus != null)
+		{
+			segmentResult = dataManager.evaluateMetrics(segmentResult);
+		}
+
+		return segmentResult;
+	}
+
+	/**
+	 * Create the DataManager of a volume, which decodes the volume.
+	 *
+	 * @param entry The entry of the volume.
+	 * @param gtImgPlus The combined ground truth, or null.
+	 * @return A DataManager object, whose volume source is null if the volume cannot be decoded.
+	 */
+	DataManager createDataManager(Entry entry, ImagePlus gtImgPlus)
+	{
+		return new DataManager(entry.filePath, gtImgPlus, entry.resultDir);
+	}
+
+	/**
+	 * Write the brain masks, with their holes filled, as an 8-bit TIFF stack of the axial planes
+	 * of the input, flipped back vertically as the input is stored.
+	 */
+	private void exportMasks(BitMask3D masks, String fileName)
+	{
+		final int width = masks.getWidth();
+		final int height = masks.getHeight();
+
+		final ImageStack stack = new ImageStack(width, height);
+
+		for (int z = 0; z < masks.getDepth(); z++)
+		{
+			final byte[] pixels = new byte[width * height];
+
+			for (int y = 0; y < height; y++)
+			{
+				final int flipped = (height - 1 - y) * width;
+
+				for (int x = 0; x < width; x++)
+				{
+					if (masks.get(x, y, z))
+					{
+						pixels[flipped + x] = (byte) 255;
+					}
+				}
+			}
+
+			stack.addSlice("", new ByteProcessor(width, height, pixels));
+		}
+
+		if (!new FileSaver(new ImagePlus("Mask", stack)).saveAsTiffStack(fileName))
+		{
+			IJ.log("Export mask fails: " + fileName);
+		}
+	}
+
+	/**
+	 * Format a row of the metrics file.
+	 */
+	String formatMetrics(Entry entry, SegmentResult segmentResult)
+	{
+		return String.format(Locale.ROOT, "%s,%d,%d,%s,%s,%s,%s,%s,%s", escape(entry.filePath),
+				segmentResult.getSliceCount(), segmentResult.getEvolveTime(),
+				segmentResult.getJaccard(), segmentResult.getDice(),
+				segmentResult.getConformity(), segmentResult.getSensitivity(),
+				segmentResult.getSpecificity(), segmentResult.getFPRate());
+	}
+
+	private static String escape(String value)
+	{
+		if (value.contains(",") || value.contains("\""))
+		{
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		}
+		return value;
+	}
+
+}
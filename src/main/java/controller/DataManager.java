@@ -21,19 +21,32 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 
 import loci.formats.FormatException;
-import loci.formats.IFormatReader;
-import loci.formats.ImageReader;
-import loci.formats.MetadataTools;
 import model.InitialParams;
 import model.Metrics;
+import model.MetricsAccumulator;
 import model.SegmentResult;
 import model.UiOptions;
 import model.Volume;
+import model.VolumeSource;
+import utils.BitMask2D;
+import utils.BitMask3D;
+import utils.Field2D;
 import utils.LSConstants;
+import utils.LSConstants.HoleFillingMethod;
 import utils.LSConstants.LevelsetType;
+import utils.LSConstants.ReinitMethod;
 import utils.LSUtil;
+import view.ContourPreview;
 import view.CustomWindow;
 import view.GenerateReportBtnActionListener;
 
@@ -52,8 +65,14 @@ public class DataManager
 	/** Maximum iterations. */
 	private int MAX_ITER = 255 * 16;
 
+	/** Velocity factors of the retries of a rejected slice, in the order they are tried. */
+	private static final double[] RETRY_VELOCITY_FACTORS = {5, 10};
+
+	/** Distances added to SHRINK_DIST to shrink the initial phi of the retries. */
+	private static final int[] RETRY_EXTRA_SHRINK_DISTS = {10, 5};
+
 	/** The function phi. */
-	private double[][] _phi = null;
+	private Field2D _phi = null;
 
 	/** The slice index with which the skull stripping starts with. */
 	private int initialIndex = 0;
@@ -98,6 +117,42 @@ public class DataManager
 	/** Whether to fill holes generated by skull stripping algorithm. */
 	private boolean isFillingHolesEnabled = false;
 
+	/** Whether to evolve only the narrow band around the zero level set. */
+	private boolean isNarrowBandEnabled = false;
+
+	/** Whether the intensity force looks up precomputed directional extrema. */
+	private boolean isDirectionalExtremaEnabled = false;
+
+	/** Whether the texture of the next slice is prepared while the current slice evolves. */
+	private boolean isTexturePrefetchEnabled = true;
+
+	/** Prepares the texture of the next slices during the evolution, null if not prefetching. */
+	private ExecutorService texturePrefetcher;
+
+	/** Whether the retries of a slice start along with its first attempt. */
+	private boolean isSpeculativeRetryEnabled = false;
+
+	/** Evolves the speculative retries, null if the retries run on demand. */
+	private ExecutorService speculativeExecutor;
+
+	/** Set when the evolution fails, so that the half still running stops at its next slice. */
+	private volatile boolean isEvolutionCancelled;
+
+	/** Whether an attempt on a slice is rejected as soon as it diverges from the last slice. */
+	private boolean isEarlyRejectionEnabled = false;
+
+	/** Whether the evolution of a slice stops once phi around the zero level set is still. */
+	private boolean isAdaptiveStopEnabled = false;
+
+	/** Whether the first attempt on a slice is limited by the iterations of its neighbour. */
+	private boolean isIterationBudgetEnabled = false;
+
+	/** Factor of the iterations of the neighbouring slice that a slice may use. */
+	private static final int BUDGET_FACTOR = 2;
+
+	/** The smallest iteration budget of a slice. */
+	private static final int MIN_BUDGET = 64;
+
 	/** Cut off boundary value of phi. */
 	private double BOUNDARY_VALUE = -0.5;
 
@@ -111,11 +166,31 @@ public class DataManager
 
 	private LevelsetType levelsetType;
 
+	private ReinitMethod reinitMethod = ReinitMethod.Sussman;
+
+	/**
+	 * Method to find and fill the holes of the masks. The volumetric method fills the mask volume
+	 * once after the evolution, the others fill each slice once it is evolved.
+	 */
+	private HoleFillingMethod holeFillingMethod = HoleFillingMethod.Ray;
+
+	/** Frames per second of the live contour preview. */
+	private double previewFps = 10;
+
 	private Color contourColor;
 
+	/** The volume decoded once and shared by the metadata, the display and the evolution. */
+	private VolumeSource volumeSource;
+
 	private ImagePlus imgPlus;
 	private ImagePlus gtImgPlus;
 
+	/** Accumulates the metrics as the slices finish, null without a ground truth. */
+	private MetricsAccumulator metricsAccumulator;
+
+	/** The ground truth packed once, whose sections are compared with the evolved ones. */
+	private BitMask3D gtMask;
+
 	private String resultDir;
 
 	private CustomWindow customWindow;
@@ -128,8 +203,21 @@ public class DataManager
 
 	public DataManager(String filePath, ImagePlus gtImgPlus, String resultDir)
 	{
-		// Read in the images(with vertical flip)
-		this.imgPlus = LSUtil.readImage(filePath, true);
+		// Decode the volume once (with vertical flip)
+		this(openVolumeSource(filePath), gtImgPlus, resultDir);
+	}
+
+	/**
+	 * Constructor for a volume that has been decoded already.
+	 * 
+	 * @param volumeSource The decoded volume, or null if it cannot be decoded.
+	 * @param gtImgPlus The ground truth, or null.
+	 * @param resultDir Directory to write the results into.
+	 */
+	public DataManager(VolumeSource volumeSource, ImagePlus gtImgPlus, String resultDir)
+	{
+		this.volumeSource = volumeSource;
+		this.imgPlus = volumeSource != null ? volumeSource.createImagePlus() : new ImagePlus();
 		this.gtImgPlus = gtImgPlus;
 
 		this.resultDir = resultDir;
@@ -147,6 +235,45 @@ public class DataManager
 
 	}
 
+	/**
+	 * Gets the decoded volume, opening it if it is not the volume of the given file.
+	 * 
+	 * @param filePath Path of the file.
+	 * @return A VolumeSource object, or null if the file cannot be decoded.
+	 */
+	private VolumeSource getVolumeSource(String filePath)
+	{
+		if (volumeSource == null || !volumeSource.getFilePath().equals(filePath))
+		{
+			volumeSource = openVolumeSource(filePath);
+		}
+
+		return volumeSource;
+	}
+
+	private static VolumeSource openVolumeSource(String filePath)
+	{
+		try
+		{
+			return new VolumeSource(filePath);
+
+		} catch (FormatException | IOException e)
+		{
+			IJ.log(LSConstants.ERROR_OPEN_IMAGE + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the decoded volume.
+	 * 
+	 * @return A VolumeSource object, or null if the file cannot be decoded.
+	 */
+	public VolumeSource getVolumeSource()
+	{
+		return volumeSource;
+	}
+
 	public void setCustomWindow(CustomWindow customWindow)
 	{
 		this.customWindow = customWindow;
@@ -158,9 +285,19 @@ public class DataManager
 		this.velocity = uiOpts.getVelocity();
 		this.threshold = uiOpts.getThreshold();
 		this.isFillingHolesEnabled = uiOpts.isHoleFilling();
+		this.isNarrowBandEnabled = uiOpts.isNarrowBand();
+		this.isDirectionalExtremaEnabled = uiOpts.isDirectionalExtrema();
+		this.isTexturePrefetchEnabled = uiOpts.isTexturePrefetch();
+		this.isSpeculativeRetryEnabled = uiOpts.isSpeculativeRetry();
+		this.isEarlyRejectionEnabled = uiOpts.isEarlyRejection();
+		this.isAdaptiveStopEnabled = uiOpts.isAdaptiveStop();
+		this.isIterationBudgetEnabled = uiOpts.isIterationBudget();
 		this.heading = uiOpts.getHeading() > 3 ? 0 : uiOpts.getHeading();
 		this.contourColor = uiOpts.getContourColor();
 		this.levelsetType = uiOpts.getLevelsetType();
+		this.reinitMethod = uiOpts.getReinitMethod();
+		this.holeFillingMethod = uiOpts.getHoleFillingMethod();
+		this.previewFps = uiOpts.getPreviewFps();
 	}
 
 	/**
@@ -177,24 +314,60 @@ public class DataManager
 	{
 		IJ.log("Fill Holes start.");
 
-		for (SkullStripper skullStripper : skullStrippers)
+		if (HoleFillingMethod.Volumetric == holeFillingMethod)
+		{
+			fillVolumeHoles();
+		} else
 		{
-			skullStripper.setOutputArray(new Filler(skullStripper.getOutputArray())
-					.getFilledArray());
+			for (SkullStripper skullStripper : skullStrippers)
+			{
+				fillHoles(skullStripper);
+			}
 		}
 
 		IJ.log("Fill holes complete.");
 	}
 
 	/**
-	 * Fill the holes in a brain mask stored in a given skullStripper object.
+	 * Fill the holes of the mask volume assembled from the brain masks of all skullStrippers,
+	 * i.e. the cavities enclosed in 3D.
+	 */
+	private void fillVolumeHoles()
+	{
+		final List<byte[][]> arrays = new ArrayList<byte[][]>();
+		for (SkullStripper skullStripper : skullStrippers)
+		{
+			arrays.add(skullStripper.getOutputArray());
+		}
+
+		try
+		{
+			final int filled = new VolumeFiller(arrays).fill();
+			IJ.log("Filled voxels: " + filled);
+
+		} catch (InterruptedException | ExecutionException e)
+		{
+			IJ.log(e.getMessage());
+		}
+	}
+
+	/**
+	 * Fill the holes in a brain mask stored in a given skullStripper object, with the selected
+	 * hole filling method. A single slice is filled by the scanline method if the volumetric one
+	 * is selected.
 	 */
 	public void fillHoles(SkullStripper skullStripper)
 	{
 		byte[][] outputArray1 = skullStripper.getOutputArray();
-		Filler filler = new Filler(outputArray1);
 
-		byte[][] outputArray2 = filler.getFilledArray();
+		byte[][] outputArray2;
+		if (HoleFillingMethod.Ray == holeFillingMethod)
+		{
+			outputArray2 = new Filler(outputArray1).getFilledArray();
+		} else
+		{
+			outputArray2 = new ScanlineFiller(outputArray1).getFilledArray();
+		}
 		skullStripper.setOutputArray(outputArray2);
 	}
 
@@ -233,50 +406,40 @@ public class DataManager
 
 		IJ.log(" ===== Load meta data ===== ");
 
-		try
-		{
-			final IFormatReader imgReader = new ImageReader();
-
-			imgReader.setMetadataStore(MetadataTools.createOMEXMLMetadata());
-
-			imgReader.setId(filePath);
+		final VolumeSource source = getVolumeSource(filePath);
 
-			IJ.log("Width = " + imgReader.getSizeX());
-			IJ.log("Height = " + imgReader.getSizeY());
+		if (source == null)
+		{
+			return;
+		}
 
-			IJ.log("Format = " + imgReader.getFormat());
+		IJ.log("Width = " + source.getWidth());
+		IJ.log("Height = " + source.getHeight());
 
-			resamplingOrient = getResamplingOrient(imgReader);
-			IJ.log("resamplingOrient = " + resamplingOrient);
+		IJ.log("Format = " + source.getFormat());
 
-			_bitsPP = imgReader.getBitsPerPixel();
-			IJ.log("Bits per pixel = " + imgReader.getBitsPerPixel());
+		resamplingOrient = getResamplingOrient(source);
+		IJ.log("resamplingOrient = " + resamplingOrient);
 
-			IJ.log("Global Meatdata = " + imgReader.getGlobalMetadata().keySet());
+		_bitsPP = source.getBitsPerPixel();
+		IJ.log("Bits per pixel = " + source.getBitsPerPixel());
 
-			xyDim =
-					Float.valueOf(String.valueOf(imgReader.getGlobalMetadata().get("/xspace step")));
+		IJ.log("Global Meatdata = " + source.getGlobalMetadata().keySet());
 
-			// TODO
-			age = 40.0;
+		xyDim = Float.valueOf(String.valueOf(source.getGlobalMetadata().get("/xspace step")));
 
-			// TODO
-			originalOrient = 0;
-			IJ.log("originalOrient = " + originalOrient);
+		// TODO
+		age = 40.0;
 
+		// TODO
+		originalOrient = 0;
+		IJ.log("originalOrient = " + originalOrient);
 
-			INTER_SLICE_DIST =
-					Float.valueOf(String.valueOf(imgReader.getGlobalMetadata().get("/zspace step")));;
 
-			IJ.log("INTER_SLICE_DIST = " + INTER_SLICE_DIST);
+		INTER_SLICE_DIST =
+				Float.valueOf(String.valueOf(source.getGlobalMetadata().get("/zspace step")));
 
-		} catch (FormatException e)
-		{
-			IJ.log(e.getMessage());
-		} catch (IOException e)
-		{
-			IJ.log(e.getMessage());
-		}
+		IJ.log("INTER_SLICE_DIST = " + INTER_SLICE_DIST);
 
 	}
 
@@ -292,57 +455,39 @@ public class DataManager
 
 		skullStrippers = new ArrayList<SkullStripper>();
 
-		// Input volume will be converted to a short 2D array for evolvement
-		final List<BufferedImage> buffImgList =
-				LSUtil.checkAndRescaleRange(LSUtil.vflipImages(LSUtil.readImage(filePath)), 0,
-						32767);
+		final VolumeSource source = getVolumeSource(filePath);
 
-		BufferedImage[] imgs = null;
-
-		if (resamplingOrient == originalOrient)
+		if (source == null)
 		{
+			return;
+		}
 
-			imgs = new BufferedImage[buffImgList.size()];
-
-			for (int i = 0; i < imgs.length; i++)
-			{
-				imgs[i] = buffImgList.get(i);
-			}
+		// The sections to evolve are read contiguously from a volume transposed once into the
+		// resampling orientation
+		Volume volume = source.getVolume();
 
-		} else
+		if (resamplingOrient != originalOrient)
 		{
-
-			int IMAGE_TYPE = 0;
-			if (_bitsPP <= 8)
-			{
-				IMAGE_TYPE = BufferedImage.TYPE_BYTE_GRAY;
-			} else
-			{
-				IMAGE_TYPE = BufferedImage.TYPE_USHORT_GRAY;
-			}
-
-			final IFormatReader iFormatReader = new ImageReader();
-
-			iFormatReader.setMetadataStore(MetadataTools.createOMEXMLMetadata());
-
 			try
 			{
-				iFormatReader.setId(filePath);
-			} catch (FormatException | IOException e)
+				volume = volume.reorient(resamplingOrient);
+
+			} catch (IOException e)
 			{
 				IJ.log(e.getMessage());
+				return;
 			}
 
-			final Volume volume = new Volume(iFormatReader);
-
-			int size = volume.getDepth(resamplingOrient);
-
-			imgs = new BufferedImage[size];
-			for (int i = 0; i < imgs.length; i++)
-			{
-				imgs[i] = volume.createGrayImage(buffImgList.get(i), IMAGE_TYPE);
-			}
+			// The preview and the exported contours show the sections being evolved
+			imgPlus = volume.createImagePlus(source.getFilePath());
+		}
 
+		// Input volume will be converted to a short 2D array for evolvement. The slices are
+		// views of the volume unless they have to be rescaled.
+		final BufferedImage[] imgs = new BufferedImage[volume.getDepth(0)];
+		for (int i = 0; i < imgs.length; i++)
+		{
+			imgs[i] = volume.createSliceImage(i, 0, 32767);
 		}
 
 		for (BufferedImage img : imgs)
@@ -354,6 +499,14 @@ public class DataManager
 
 			skullStripper.setBitsPP(_bitsPP);
 
+			skullStripper.setNarrowBandEnabled(isNarrowBandEnabled);
+
+			skullStripper.setDirectionalExtremaEnabled(isDirectionalExtremaEnabled);
+
+			skullStripper.setAdaptiveStopEnabled(isAdaptiveStopEnabled);
+
+			skullStripper.setReinitMethod(reinitMethod);
+
 			skullStripper.calculateProbingDistance(xyDim, age);
 
 			skullStrippers.add(skullStripper);
@@ -369,9 +522,6 @@ public class DataManager
 			ss.setThresholdIntensities(intens2, intens10, intens40, intens98);
 		}
 
-		// Set once since customWindow is static
-		skullStrippers.get(0).setCustomWindow(customWindow);
-
 	}
 
 	/**
@@ -395,70 +545,207 @@ public class DataManager
 		// Define the length of a small contour
 		int SMALL_CIRCLE = 100;
 
-		// Keep the _phi for slides before "index"
-		double[][] initPhi = LSUtil.copy2DAry(_phi);
+		// The evolution publishes phi to the preview, which renders it at its own frame rate
+		ContourPreview preview = null;
+		if (customWindow != null)
+		{
+			customWindow.appendLog(" ===== Start evolvement ===== ");
+
+			preview = new ContourPreview(customWindow, previewFps);
+			preview.start();
+		}
+
+		for (SkullStripper ss : skullStrippers)
+		{
+			ss.setContourPreview(preview);
+		}
+
+		if (LevelsetType.Texture == levelsetType && isTexturePrefetchEnabled)
+		{
+			texturePrefetcher = Executors.newFixedThreadPool(2);
+		}
+
+		// Two retries for each of the two halves
+		if (isSpeculativeRetryEnabled)
+		{
+			speculativeExecutor = Executors.newFixedThreadPool(4);
+		}
+
+		metricsAccumulator = createMetricsAccumulator();
 
-		customWindow.appendLog(" ===== Start evolvement ===== ");
+		isEvolutionCancelled = false;
 
 		final Date tic = new Date();
 
-		// Skull-strip slices after center slice
-		final List<double[][]> phiListAfter =
-				evolve(_phi, SHRINK_DIST, SLICE_1, SLICE_2, SMALL_CIRCLE, 1);
-		IJ.log("Convolution after center finished.");
+		// Skull-strip the slices after and before the center slice concurrently. Each slice has
+		// its own SkullStripper, so the two halves share no mutable state.
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try
+		{
+			// Skull-strip the center slice once, both halves start from its result
+			final Field2D centerPhi =
+					evolve(_phi, SHRINK_DIST, SLICE_1, SLICE_2, SMALL_CIRCLE, initialIndex,
+							initialIndex + 1, 1);
+
+			final Future<Field2D> after = executor.submit(new Callable<Field2D>()
+			{
+				@Override
+				public Field2D call()
+				{
+					final Field2D phi =
+							evolve(centerPhi, SHRINK_DIST, SLICE_1, SLICE_2, SMALL_CIRCLE,
+									initialIndex + 1, skullStrippers.size(), 1);
+					IJ.log("Convolution after center finished.");
+					return phi;
+				}
+			});
+
+			final Future<Field2D> before = executor.submit(new Callable<Field2D>()
+			{
+				@Override
+				public Field2D call()
+				{
+					final Field2D phi =
+							evolve(centerPhi, SHRINK_DIST, SLICE_1, SLICE_2, SMALL_CIRCLE,
+									initialIndex - 1, -1, -1);
+					IJ.log("Convolution before center finished.");
+					return phi;
+				}
+			});
+
+			// Wait for both halves; each slice has its output array and metrics by now
+			before.get();
+			after.get();
+
+		} catch (InterruptedException | ExecutionException e)
+		{
+			IJ.log(e.getMessage());
+			return segmentResult;
+
+		} finally
+		{
+			// The halves use the prefetcher and the retry executor until they stop
+			stopHalves(executor);
+
+			if (preview != null)
+			{
+				preview.stop();
+			}
+
+			if (texturePrefetcher != null)
+			{
+				texturePrefetcher.shutdownNow();
+				texturePrefetcher = null;
+			}
+
+			if (speculativeExecutor != null)
+			{
+				speculativeExecutor.shutdownNow();
+				speculativeExecutor = null;
+			}
+		}
 
-		// Skull-strip slides before center slice
-		final List<double[][]> phiListBefore =
-				evolve(initPhi, SHRINK_DIST, SLICE_1, SLICE_2, SMALL_CIRCLE, -1);
-		IJ.log("Convolution before center finished.");
+		// Fill the cavities of the whole mask volume at once
+		if (isFillingHolesEnabled && HoleFillingMethod.Volumetric == holeFillingMethod)
+		{
+			fillVolumeHoles();
+		}
 
 		final Date tac = new Date();
 
 		segmentResult.setEvolveTime(tac.getTime() - tic.getTime());
 
-		// Remove the duplicated center slice
-		phiListAfter.remove(0);
+		segmentResult.setSliceCount(skullStrippers.size());
 
-		if (phiListBefore.addAll(phiListAfter))
+		if (metricsAccumulator != null)
 		{
-			segmentResult.setPhiList(phiListBefore);
+			segmentResult.setMetrics(metricsAccumulator.getMetrics());
+			segmentResult.setJaccardSeries(metricsAccumulator.getJaccardSeries());
+			segmentResult.setDiceSeries(metricsAccumulator.getDiceSeries());
 		}
 
 		return segmentResult;
 	}
 
 	/**
-	 * Evolution on half volume
+	 * Stop the halves of the evolution that are still running, e.g. after the other half failed,
+	 * and wait for them, so that no slice is evolving once the executors shared by the slices are
+	 * shut down.
+	 * 
+	 * @param executor The executor of the halves.
+	 */
+	private void stopHalves(ExecutorService executor)
+	{
+		isEvolutionCancelled = true;
+		executor.shutdownNow();
+
+		try
+		{
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+			{
+				IJ.log("Waiting for the evolution to stop.");
+			}
+
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Evolution on half volume. It stops before the next slice once the evolution is cancelled or
+	 * the thread is interrupted.
 	 * 
 	 * @param _phi
 	 * @param SHRINK_DIST
 	 * @param SLICE_1
 	 * @param SLICE_2
 	 * @param SMALL_CIRCLE
+	 * @param startIdx Index of the first slice to evolve.
+	 * @param endIdx Index of the slice to stop at, exclusive.
 	 * @param direction
+	 * @return Phi of the last evolved slice, or _phi if no slice is evolved.
 	 */
-	private List<double[][]> evolve(double[][] _phi, int SHRINK_DIST, int SLICE_1, int SLICE_2,
-			int SMALL_CIRCLE, int direction)
+	private Field2D evolve(Field2D _phi, int SHRINK_DIST, int SLICE_1, int SLICE_2,
+			int SMALL_CIRCLE, int startIdx, int endIdx, int direction)
 	{
 
-		final List<double[][]> phiList = new ArrayList<double[][]>();
-
 		int contourLength = 0;
-		double[][] phiTemp = null;
+		Field2D phiTemp = null;
 		boolean isPhiAcceptable = true;
 		double velocity = 0;
-		int sliceIdx = initialIndex;
+		int sliceIdx = startIdx;
 
 		SkullStripper skullStripper;
 
-		while (sliceIdx >= 0 && sliceIdx < skullStrippers.size())
+		// Texture preparation of the slice being evolved, submitted with the previous slice
+		Future<?> texturePrefetch = null;
+
+		// Read once, as the executors are shut down and cleared when the evolution ends
+		final ExecutorService prefetcher = texturePrefetcher;
+		final ExecutorService retryExecutor = speculativeExecutor;
+
+		while (sliceIdx != endIdx && !isEvolutionCancelled
+				&& !Thread.currentThread().isInterrupted())
 		{
 
 			IJ.log("======= Evolve: " + sliceIdx + " =======");
 
 			skullStripper = skullStrippers.get(sliceIdx);
 
-			customWindow.setSliceNo(sliceIdx);
+			// If the prefetch has not started, the evolution prepares the texture itself, so
+			// that the prefetch cannot run after the slice has released it
+			if (texturePrefetch != null)
+			{
+				texturePrefetch.cancel(false);
+				texturePrefetch = null;
+			}
+
+			if (customWindow != null)
+			{
+				customWindow.setSliceNo(sliceIdx);
+			}
 
 			// The last mask area should be reset at the beginning of the
 			// forward evolvement
@@ -467,17 +754,68 @@ public class DataManager
 				skullStripper.clearLastMaskArea();
 			}
 
-			phiTemp = LSUtil.copy2DAry(_phi);
+			// Shrink phi of the previous slice before applying it as the initial contour, with
+			// the SkullStripper of this slice so that the state stays confined to this thread
+			if (sliceIdx != initialIndex)
+			{
+				_phi = skullStripper.shrinkPhiZero(_phi, SHRINK_DIST);
+			}
+
+			phiTemp = _phi.copy();
 
-			// Shrink the phi zero contour before applying it as an initial
-			// contour Using reiniailization method
-			_phi = skullStripper.skullStrip(MAX_ITER, _phi, sliceIdx);
+			// Prepare the texture of the next slice while this one evolves
+			if (prefetcher != null && sliceIdx + direction != endIdx)
+			{
+				final SkullStripper next = skullStrippers.get(sliceIdx + direction);
+				texturePrefetch = prefetcher.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						next.prepareTexture();
+					}
+				});
+			}
 
 			// Do not check acceptance if the images are around mid-sagittal
 			// slices where the CSF change is big and segmentation between
 			// slices could be very different
-			if ((resamplingOrient == 2 && sliceIdx > SLICE_1 && sliceIdx < SLICE_2)
-					|| sliceIdx == initialIndex)
+			final boolean isAcceptanceChecked =
+					!((resamplingOrient == 2 && sliceIdx > SLICE_1 && sliceIdx < SLICE_2)
+							|| sliceIdx == initialIndex);
+
+			// In speculative mode, the retries evolve from phiTemp on copies of the SkullStripper
+			// along with the first attempt, and are dropped if they are not needed
+			SkullStripper[] retryStrippers = null;
+			EvolutionMonitor[] retryMonitors = null;
+			List<Future<Field2D>> retryPhis = null;
+			if (retryExecutor != null && isAcceptanceChecked)
+			{
+				velocity = skullStripper.getVelocity();
+				retryStrippers = new SkullStripper[RETRY_VELOCITY_FACTORS.length];
+				retryMonitors = new EvolutionMonitor[RETRY_VELOCITY_FACTORS.length];
+				retryPhis = new ArrayList<Future<Field2D>>();
+
+				for (int i = 0; i < retryStrippers.length; i++)
+				{
+					retryStrippers[i] = skullStripper.copy();
+					retryStrippers[i].setVelocity(velocity * RETRY_VELOCITY_FACTORS[i]);
+					retryStrippers[i].setStrippingEnabled(true);
+					retryMonitors[i] = createMonitor(phiTemp);
+					retryPhis.add(submitRetry(retryExecutor, retryStrippers[i], phiTemp,
+							SHRINK_DIST + RETRY_EXTRA_SHRINK_DISTS[i], sliceIdx, retryMonitors[i]));
+				}
+			}
+
+			// Shrink the phi zero contour before applying it as an initial
+			// contour Using reiniailization method
+			EvolutionMonitor monitor =
+					isAcceptanceChecked && isEarlyRejectionEnabled ? createMonitor(phiTemp) : null;
+			_phi =
+					skullStripper.skullStrip(getIterationBudget(sliceIdx, direction), _phi,
+							sliceIdx, monitor);
+
+			if (!isAcceptanceChecked)
 			{
 
 				isPhiAcceptable = true;
@@ -485,38 +823,53 @@ public class DataManager
 			} else
 			{
 				// Check if the skull-stripped result is acceptable
-				isPhiAcceptable = _isPhiAcceptable(_phi, phiTemp);
+				isPhiAcceptable = _isPhiAcceptable(_phi, phiTemp, monitor);
 			}
 
 			IJ.log("1:" + isPhiAcceptable);
 
 			if (!isPhiAcceptable)
 			{
-				// Increase velocity by 5 times
 				velocity = skullStripper.getVelocity();
 
-				skullStripper.setVelocity(velocity * 5);
-				skullStripper.setStrippingEnabled(true);
-				_phi = skullStripper.shrinkPhiZero(phiTemp, SHRINK_DIST + 10);
-				_phi = skullStripper.skullStrip(MAX_ITER, _phi, sliceIdx);
-
-				// Check if the skull-stripped result is acceptable
-				isPhiAcceptable = _isPhiAcceptable(_phi, phiTemp);
-
-				IJ.log("2:" + isPhiAcceptable);
-				if (!isPhiAcceptable)
+				// Increase velocity by 5 times, then by 10 times
+				for (int i = 0; i < RETRY_VELOCITY_FACTORS.length && !isPhiAcceptable; i++)
 				{
+					Field2D retryPhi = null;
+					if (retryPhis != null)
+					{
+						monitor = retryMonitors[i];
+						try
+						{
+							retryPhi = retryPhis.get(i).get();
 
-					// Increase velocity by 10 times
-					skullStripper.setVelocity(velocity * 10);
+						} catch (InterruptedException | ExecutionException e)
+						{
+							IJ.log(e.getMessage());
+						}
+					}
+
+					skullStripper.setVelocity(velocity * RETRY_VELOCITY_FACTORS[i]);
 					skullStripper.setStrippingEnabled(true);
-					_phi = skullStripper.shrinkPhiZero(phiTemp, SHRINK_DIST + 5);
-					_phi = skullStripper.skullStrip(MAX_ITER, _phi, sliceIdx);
+
+					if (retryPhi != null)
+					{
+						// Take over the result of the speculative retry
+						_phi = retryPhi;
+						skullStripper.takeOver(retryStrippers[i]);
+					} else
+					{
+						monitor = isEarlyRejectionEnabled ? createMonitor(phiTemp) : null;
+						_phi =
+								skullStripper.shrinkPhiZero(phiTemp, SHRINK_DIST
+										+ RETRY_EXTRA_SHRINK_DISTS[i]);
+						_phi = skullStripper.skullStrip(MAX_ITER, _phi, sliceIdx, monitor);
+					}
 
 					// Check if the skull-stripped result is acceptable
-					isPhiAcceptable = _isPhiAcceptable(_phi, phiTemp);
+					isPhiAcceptable = _isPhiAcceptable(_phi, phiTemp, monitor);
 
-					IJ.log("3:" + isPhiAcceptable);
+					IJ.log((i + 2) + ":" + isPhiAcceptable);
 				}
 
 				if (!isPhiAcceptable)
@@ -544,43 +897,120 @@ public class DataManager
 				}
 			}
 
-			if (isFillingHolesEnabled)
+			// Stop the speculative retries that are not needed
+			if (retryPhis != null)
+			{
+				for (int i = 0; i < retryPhis.size(); i++)
+				{
+					retryMonitors[i].cancel();
+					retryPhis.get(i).cancel(false);
+				}
+			}
+
+			// The volumetric filling runs once all slices are evolved
+			if (isFillingHolesEnabled && HoleFillingMethod.Volumetric != holeFillingMethod)
 			{
 				fillHoles(skullStripper);
 			}
 
+			// The slices before and after the center share imgPlus
+			final BufferedImage sliceImage;
+			synchronized (imgPlus)
+			{
+				imgPlus.setSlice(sliceIdx + 1);
+				sliceImage = imgPlus.getBufferedImage();
+			}
+
 			LSUtil.exportBufferedImage(LSUtil.layContourOnImage(
-					LSUtil.convertGrayToRGB(imgPlus.getBufferedImage()),
-					LSUtil.convertToBinaryAry(_phi, -0.5d, (byte) 40), contourColor), resultDir
+					LSUtil.convertGrayToRGB(sliceImage),
+					BitMask2D.fromField(_phi, -0.5d), contourColor), resultDir
 					+ "/" + (sliceIdx + 1));
 
-			phiList.add(_phi);
+			accumulateMetrics(sliceIdx, _phi);
+
+			// The slice is done, drop its intensities, precomputed intensity extrema and texture
+			skullStripper.releaseInputArray();
+			skullStripper.releaseDirectionalExtrema();
+			skullStripper.releaseTexture();
 
 			// Update slice index
 			sliceIdx += direction;
-			_phi = skullStripper.shrinkPhiZero(_phi, SHRINK_DIST);
 
 		}
 
-		return phiList;
+		return _phi;
+
+	}
+
+	/**
+	 * Gets the maximum iterations of the first attempt on a slice. With the iteration budget, a
+	 * slice may use a multiple of the iterations its neighbour took to come to rest, since
+	 * neighbouring slices look alike; the retries still run up to MAX_ITER.
+	 * 
+	 * @param sliceIdx Index of the slice.
+	 * @param direction Direction of the evolution, the neighbour before it has been evolved.
+	 * @return The maximum iterations.
+	 */
+	private int getIterationBudget(int sliceIdx, int direction)
+	{
+		if (!isIterationBudgetEnabled || sliceIdx == initialIndex)
+		{
+			return MAX_ITER;
+		}
+
+		// Without a converged neighbour there is nothing to predict from
+		final int neighbourIterations =
+				skullStrippers.get(sliceIdx - direction).getConvergedIterations();
+		final int budget =
+				neighbourIterations < 0 ? MAX_ITER : Math.min(MAX_ITER,
+						Math.max(MIN_BUDGET, BUDGET_FACTOR * neighbourIterations));
+
+		IJ.log("Iteration budget: " + budget + " (neighbour: " + neighbourIterations + ")");
+
+		return budget;
+	}
 
+	/**
+	 * Start a speculative retry of a slice.
+	 * 
+	 * @param retryExecutor The executor of the retries.
+	 * @param retryStripper A copy of the SkullStripper of the slice, set up for the retry.
+	 * @param phiTemp Phi the first attempt of the slice starts from, which is left unchanged.
+	 * @param shrinkDist Distance to shrink phiTemp before the retry.
+	 * @param sliceIdx Index of the slice.
+	 * @param monitor Monitor of the retry, which may cancel it.
+	 * @return The phi of the retry.
+	 */
+	private Future<Field2D> submitRetry(ExecutorService retryExecutor,
+			final SkullStripper retryStripper, final Field2D phiTemp, final int shrinkDist,
+			final int sliceIdx, final EvolutionMonitor monitor)
+	{
+		return retryExecutor.submit(new Callable<Field2D>()
+		{
+			@Override
+			public Field2D call()
+			{
+				return retryStripper.skullStrip(MAX_ITER,
+						retryStripper.shrinkPhiZero(phiTemp, shrinkDist), sliceIdx, monitor);
+			}
+		});
 	}
 
 	/**
-	 * New getResamplingOrient for IFormatReader. Get resampling orient that is determined by the
+	 * New getResamplingOrient for VolumeSource. Get resampling orient that is determined by the
 	 * orientation giving the shortest depth. For example, if resampling in x direction gives the
 	 * shortest depth, then the resampling orientation is assigned as axial.
 	 * 
-	 * @param imageReader
+	 * @param volumeSource
 	 * @return
 	 */
-	private int getResamplingOrient(IFormatReader imageReader)
+	private int getResamplingOrient(VolumeSource volumeSource)
 	{
 		int resamplingOrient = 0;
 
-		int xSize = imageReader.getSizeX();
-		int ySize = imageReader.getSizeY();
-		int zSize = imageReader.getSizeZ();
+		int xSize = volumeSource.getWidth();
+		int ySize = volumeSource.getHeight();
+		int zSize = volumeSource.getDepth();
 
 		if (zSize < ySize && zSize < xSize)
 		{
@@ -597,91 +1027,58 @@ public class DataManager
 	}
 
 	/**
-	 * Calculate the histogram of an image and initialize the class members of _intens2, _intens10,
-	 * _intens40 and _intens98.
+	 * Calculate the histogram of the volume and initialize the class members of _intens2,
+	 * _intens10, _intens40 and _intens98. The slices are converted once each and counted into
+	 * partial histograms on the common fork-join pool, which are merged into the global one.
 	 */
 	private void calculateBound(List<SkullStripper> skullStrippers)
 	{
-		// Find the maximum intensity
+		// The common pool is shared by the volumes of a batch instead of a pool per volume
+		final int[] hist =
+				ForkJoinPool.commonPool().invoke(
+						new HistogramTask(skullStrippers, 0, skullStrippers.size()));
+
+		// Find the maximum and minimum intensity, the minimum is at most 0
 		int maxI = 0;
 		int minI = 0;
-		short[][] array = null;
-		BufferedImage image = null;
-
-		for (SkullStripper skullStripper : skullStrippers)
+		for (int k = 0; k < hist.length; k++)
 		{
-
-			image = skullStripper.getInputImage();
-
-			array = skullStripper.create2DArray(image);
-
-			for (int x = 0; x < array.length; x++)
+			if (hist[k] > 0)
 			{
-				for (int y = 0; y < array[0].length; y++)
-				{
-					if (maxI < array[x][y])
-						maxI = array[x][y];
-
-					if (minI > array[x][y])
-						minI = array[x][y];
-
-				}
+				minI = Math.min(minI, k + Short.MIN_VALUE);
+				maxI = Math.max(maxI, k + Short.MIN_VALUE);
 			}
 		}
 
 		IJ.log("Max intensity = " + maxI);
 		IJ.log("Min intensity = " + minI);
 
-		// Initialize the histogram array
-		int[] hist = new int[maxI + 1];
-
-		// Construct histogram array
-		int intens;
-		for (SkullStripper skullStripper : skullStrippers)
-		{
-			image = skullStripper.getInputImage();
-			array = skullStripper.create2DArray(image);
-			for (int x = 0; x < array.length; x++)
-			{
-				for (int y = 0; y < array[0].length; y++)
-				{
-					intens = array[x][y];
-					hist[intens]++;
-				}
-			}
-		}
-
-		// Calculate _intens2
-		double sum = 0;
+		// Calculate _intens2 and _intens98 in one scan of the cumulative histogram, which counts
+		// the intensities from 0 on
 		SkullStripper skullStripper = skullStrippers.get(0);
-		image = skullStripper.getInputImage();
+		BufferedImage image = skullStripper.getInputImage();
 		int width = image.getWidth();
 		int height = image.getHeight();
 		double totalSum = width * height * skullStrippers.size();
-		for (int k = 0; k < hist.length; k++)
+
+		double sum = 0;
+		boolean isIntens2Found = false;
+		for (int k = -Short.MIN_VALUE; k < hist.length; k++)
 		{
 			sum += hist[k];
-			if (sum / totalSum > 0.02)
+			if (!isIntens2Found && sum / totalSum > 0.02)
 			{
-				intens2 = k;
-				k = hist.length;
+				intens2 = k + Short.MIN_VALUE;
+				isIntens2Found = true;
 			}
-		}
-
-		IJ.log("Intensity(2%) = " + intens2);
-
-		// Calculate _intens98
-		sum = 0;
-		for (int k = 0; k < hist.length; k++)
-		{
-			sum += hist[k];
 			if (sum / totalSum > 0.98)
 			{
-				intens98 = k;
-				k = hist.length;
+				intens98 = k + Short.MIN_VALUE;
+				break;
 			}
 		}
 
+		IJ.log("Intensity(2%) = " + intens2);
 		IJ.log("Intensity(98%) = " + intens98);
 
 		// Calculate _intense10
@@ -693,6 +1090,58 @@ public class DataManager
 		IJ.log("10%/40% = " + intens10 + "/" + intens40);
 	}
 
+	/**
+	 * Create a monitor of an attempt on a slice, which rejects the attempt early if enabled and
+	 * can cancel it otherwise.
+	 * 
+	 * @param lastPhi Phi in last (or previous) slide.
+	 * @return An EvolutionMonitor object.
+	 */
+	private EvolutionMonitor createMonitor(Field2D lastPhi)
+	{
+		return new EvolutionMonitor(lastPhi, calculateMaxAreaDif(lastPhi), BOUNDARY_VALUE,
+				isEarlyRejectionEnabled);
+	}
+
+	/**
+	 * The largest acceptable growth of the mask area over the last slice, which is proportional
+	 * to the contour length of the last slice.
+	 * 
+	 * @param lastPhi Phi in last (or previous) slide.
+	 * @return The largest growth, or infinity if the last slice has no contour.
+	 */
+	private double calculateMaxAreaDif(Field2D lastPhi)
+	{
+		final int contourLength = LSUtil.calculateContourLength(lastPhi, -0.5d, (byte) 40);
+
+		if (contourLength > 0)
+		{
+			return contourLength * (Math.abs(INTER_SLICE_DIST) + 1) * 2;
+		}
+
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * If the segmentation results of an attempt, which may have been monitored, is acceptable.
+	 * 
+	 * @param phi to check on.
+	 * @param lastPhi Phi in last (or previous) slide.
+	 * @param monitor Monitor of the attempt, or null.
+	 * @return True is phi is acceptable; or false if it is unacceptable or rejected while
+	 *         evolving.
+	 */
+	private boolean _isPhiAcceptable(Field2D phi, Field2D lastPhi, EvolutionMonitor monitor)
+	{
+		if (monitor != null && monitor.isRejected())
+		{
+			IJ.log("Rejected while evolving");
+			return false;
+		}
+
+		return _isPhiAcceptable(phi, lastPhi);
+	}
+
 	/**
 	 * If the segmentation results, represented by phi, is acceptable.
 	 * 
@@ -700,46 +1149,32 @@ public class DataManager
 	 * @param lastPhi Phi in last (or previous) slide.
 	 * @return True is phi is acceptable; or false if it is unacceptable.
 	 */
-	private boolean _isPhiAcceptable(double[][] phi, double[][] lastPhi)
+	private boolean _isPhiAcceptable(Field2D phi, Field2D lastPhi)
 	{
 		boolean isAcceptable = true;
-		double LIMIT_JACCARD = 0.85;
 
 		// =======
 		final Metrics metrics =
-				new Metrics(LSUtil.convertBoolAry(lastPhi, BOUNDARY_VALUE), LSUtil.convertBoolAry(
-						phi, BOUNDARY_VALUE));
+				new Metrics(BitMask2D.fromField(lastPhi, BOUNDARY_VALUE), BitMask2D.fromField(phi,
+						BOUNDARY_VALUE));
 
 		double jaccard = metrics.getJaccard();
 
 		IJ.log("Jaccard:" + jaccard);
 
 		int maskArea = LSUtil.calculateMaskArea(phi, -0.5d);
-		if (maskArea > 10000 && jaccard < LIMIT_JACCARD)
+		if (maskArea > EvolutionMonitor.LIMIT_MASK_AREA && jaccard < EvolutionMonitor.LIMIT_JACCARD)
 		{
 			isAcceptable = false;
 
 		} else
 		{
-
-			int lastMaskArea = 0;
-			int contourLength = 0;
-			lastMaskArea = LSUtil.calculateMaskArea(lastPhi, -0.5d);
+			int lastMaskArea = LSUtil.calculateMaskArea(lastPhi, -0.5d);
 			double difference = maskArea - lastMaskArea;
 
-			double MAX_AREA_DIF = 0;
-			contourLength = LSUtil.calculateContourLength(lastPhi, -0.5d, (byte) 40);
-
-			if (contourLength > 0)
-			{
-				MAX_AREA_DIF = contourLength * (Math.abs(INTER_SLICE_DIST) + 1) * 2;
-			} else
-			{
-				MAX_AREA_DIF = difference;
-			}
 			// If the difference between lastMaskArea and maskArea is within
 			// 15% of lastMaskArea, then phi is acceptable
-			if (difference > MAX_AREA_DIF)
+			if (difference > calculateMaxAreaDif(lastPhi))
 			{
 				isAcceptable = false;
 			}
@@ -750,7 +1185,82 @@ public class DataManager
 	}
 
 	/**
-	 * Evaluate the result by calculating metrics (Jaccard, Dice, Conformity,...)
+	 * Add the metrics of a finished slice against its ground truth, if any.
+	 * 
+	 * @param sliceIdx Index of the slice.
+	 * @param phi The accepted phi of the slice.
+	 */
+	private void accumulateMetrics(int sliceIdx, Field2D phi)
+	{
+		if (metricsAccumulator == null || sliceIdx >= gtMask.getSectionCount(resamplingOrient))
+		{
+			return;
+		}
+
+		metricsAccumulator.add(sliceIdx, BitMask2D.fromField(phi, BOUNDARY_VALUE),
+				gtMask.getSection(sliceIdx, resamplingOrient));
+	}
+
+	/**
+	 * Pack the ground truth, if any, to accumulate the metrics against. The ground truth is
+	 * axial as the input, and is cut into sections of the resampling orientation. Axial slices
+	 * beyond the ground truth are not evaluated, as before.
+	 * 
+	 * @return A MetricsAccumulator object, or null without a ground truth of the volume size.
+	 */
+	private MetricsAccumulator createMetricsAccumulator()
+	{
+		gtMask = null;
+
+		if (gtImgPlus == null || volumeSource == null)
+		{
+			return null;
+		}
+
+		final BitMask3D groundTruth = LSUtil.convertImgPlusToBitMask3D(gtImgPlus, 1);
+
+		if (groundTruth.getWidth() != volumeSource.getWidth()
+				|| groundTruth.getHeight() != volumeSource.getHeight()
+				|| (resamplingOrient != 0 && groundTruth.getDepth() != volumeSource.getDepth()))
+		{
+			IJ.log(LSConstants.ERROR_GROUND_TRUTH_MISMATCH);
+			return null;
+		}
+
+		gtMask = groundTruth;
+
+		return new MetricsAccumulator(skullStrippers.size());
+	}
+
+	/**
+	 * Put the brain masks of all skullStrippers, with their holes filled as selected, back into a
+	 * volume of the geometry of the input, i.e. sections of the resampling orientation become the
+	 * axial planes of the decoded volume.
+	 * 
+	 * @return A BitMask3D object.
+	 */
+	public BitMask3D createMaskVolume()
+	{
+		final BitMask3D masks =
+				new BitMask3D(volumeSource.getWidth(), volumeSource.getHeight(),
+						volumeSource.getDepth());
+
+		for (int i = 0; i < skullStrippers.size(); i++)
+		{
+			final byte[][] outputArray = skullStrippers.get(i).getOutputArray();
+			if (outputArray != null)
+			{
+				masks.setSection(i, resamplingOrient, BitMask2D.fromArray(outputArray));
+			}
+		}
+
+		return masks;
+	}
+
+	/**
+	 * Evaluate the result by calculating metrics (Jaccard, Dice, Conformity,...). The metrics are
+	 * accumulated while the volume evolves, so there is nothing left to calculate without a
+	 * ground truth of the volume.
 	 * 
 	 * @return
 	 */
@@ -764,17 +1274,25 @@ public class DataManager
 			return new SegmentResult();
 		}
 
-		final List<double[][]> gtDoubleImgs = LSUtil.convertImgPlusToDouble(gtImgPlus);
-
-		final Metrics metrics =
-				new Metrics(LSUtil.convertBoolAry(segmentResult.getPhiList(), BOUNDARY_VALUE),
-						LSUtil.convertBoolAry(gtDoubleImgs, 1));
-
-		segmentResult.setMetrics(metrics);
+		// The metrics are accumulated against the ground truth while the volume evolves
+		if (segmentResult.getMetrics() == null)
+		{
+			IJ.log(LSConstants.ERROR_GROUND_TRUTH_NOT_FOUND);
+		}
 
 		return segmentResult;
 	}
 
+	/**
+	 * Gets the metrics accumulated so far, which can be read while the volume evolves.
+	 * 
+	 * @return A MetricsAccumulator object, or null without a ground truth.
+	 */
+	public MetricsAccumulator getMetricsAccumulator()
+	{
+		return metricsAccumulator;
+	}
+
 	public void enableGenerateReportBtn(SegmentResult segmentResultWithMetrics, String fileName,
 			List<String> gtFileNameList)
 	{
@@ -786,4 +1304,63 @@ public class DataManager
 
 	}
 
+	/**
+	 * Counts the intensities of a range of slices into a histogram of 65536 bins, where bin k
+	 * holds intensity k + Short.MIN_VALUE. Ranges larger than {@link #SLICES_PER_TASK} are split
+	 * and their partial histograms added.
+	 */
+	private static class HistogramTask extends RecursiveTask<int[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private static final int SLICES_PER_TASK = 8;
+
+		private final List<SkullStripper> skullStrippers;
+
+		private final int from;
+
+		private final int to;
+
+		HistogramTask(List<SkullStripper> skullStrippers, int from, int to)
+		{
+			this.skullStrippers = skullStrippers;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected int[] compute()
+		{
+			if (to - from > SLICES_PER_TASK)
+			{
+				final int mid = (from + to) >>> 1;
+				final HistogramTask left = new HistogramTask(skullStrippers, from, mid);
+				left.fork();
+
+				final int[] hist = new HistogramTask(skullStrippers, mid, to).compute();
+				final int[] leftHist = left.join();
+				for (int k = 0; k < hist.length; k++)
+				{
+					hist[k] += leftHist[k];
+				}
+				return hist;
+			}
+
+			final int[] hist = new int[1 << 16];
+			for (int i = from; i < to; i++)
+			{
+				final SkullStripper skullStripper = skullStrippers.get(i);
+
+				for (short intens : skullStripper.getInputArray())
+				{
+					hist[intens - Short.MIN_VALUE]++;
+				}
+
+				// Keeping the arrays of all slices would hold the whole volume on the heap
+				skullStripper.releaseInputArray();
+			}
+			return hist;
+		}
+	}
+
 }
@@ -0,0 +1,182 @@
+package controller;
+
+import utils.Field2D;
+
+/**
+ * Watches an attempt to skull-strip a slice while it evolves, so that the attempt can stop before
+ * it reaches stationarity or the maximum iterations. The attempt is rejected as soon as its mask
+ * breaks the acceptance rule of the slice, i.e. it is large and overlaps the mask of the previous
+ * slice too little, or it outgrows the previous mask by more than the allowed area, and keeps
+ * moving away from it over {@link #REJECTION_CHECKS} consecutive checks. The attempt can also be
+ * cancelled from another thread, e.g. once a speculative retry is not needed.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class EvolutionMonitor
+{
+
+	/** The Jaccard index below which a large mask is not acceptable. */
+	public static final double LIMIT_JACCARD = 0.85;
+
+	/** The mask area above which the Jaccard index is checked. */
+	public static final int LIMIT_MASK_AREA = 10000;
+
+	/** The number of consecutive diverging checks after which the attempt is rejected. */
+	static final int REJECTION_CHECKS = 4;
+
+	/** Mask of the previous slice in row-major order. */
+	private final boolean[] lastMask;
+
+	private final int lastMaskArea;
+
+	/** The largest acceptable growth of the mask area over the previous slice. */
+	private final double maxAreaDif;
+
+	/** Cut off boundary value of phi. */
+	private final double boundaryValue;
+
+	/** Whether the attempt is rejected while it evolves, otherwise it is only cancellable. */
+	private final boolean isEarlyRejectionEnabled;
+
+	private volatile boolean isCancelled = false;
+
+	private boolean isRejected = false;
+
+	/** The number of consecutive checks where the mask broke the rule and moved away further. */
+	private int divergingChecks = 0;
+
+	private int lastCheckedArea = -1;
+
+	private double lastCheckedJaccard = Double.NaN;
+
+	/**
+	 * Create a monitor of an attempt.
+	 *
+	 * @param lastPhi Phi the attempt is compared with, which is left unchanged.
+	 * @param maxAreaDif The largest acceptable growth of the mask area over lastPhi.
+	 * @param boundaryValue Cut off boundary value of phi.
+	 * @param isEarlyRejectionEnabled True to reject the attempt while it evolves; false to only
+	 *        stop it when cancelled.
+	 */
+	public EvolutionMonitor(Field2D lastPhi, double maxAreaDif, double boundaryValue,
+			boolean isEarlyRejectionEnabled)
+	{
+		this.maxAreaDif = maxAreaDif;
+		this.boundaryValue = boundaryValue;
+		this.isEarlyRejectionEnabled = isEarlyRejectionEnabled;
+
+		final double[] data = lastPhi.getData();
+		lastMask = new boolean[data.length];
+
+		int area = 0;
+		for (int idx = 0; idx < data.length; idx++)
+		{
+			lastMask[idx] = data[idx] >= boundaryValue;
+			if (lastMask[idx])
+			{
+				area++;
+			}
+		}
+		lastMaskArea = area;
+	}
+
+	/**
+	 * Check phi of the attempt, whose mask area is given.
+	 *
+	 * @param phi The current phi of the attempt.
+	 * @param maskArea The mask area of phi.
+	 * @return True if the attempt should stop, i.e. it is cancelled or rejected.
+	 */
+	public boolean check(Field2D phi, int maskArea)
+	{
+		if (isCancelled || isRejected)
+		{
+			return true;
+		}
+
+		if (!isEarlyRejectionEnabled)
+		{
+			return false;
+		}
+
+		final double jaccard = calculateJaccard(phi);
+		final boolean isTooLarge = maskArea - lastMaskArea > maxAreaDif;
+		final boolean isTooDifferent = maskArea > LIMIT_MASK_AREA && jaccard < LIMIT_JACCARD;
+
+		// Moving away from the previous mask: growing while overlapping it less
+		final boolean isDiverging =
+				lastCheckedArea >= 0 && maskArea >= lastCheckedArea
+						&& !(jaccard > lastCheckedJaccard);
+
+		if ((isTooLarge || isTooDifferent) && isDiverging)
+		{
+			divergingChecks++;
+		} else
+		{
+			divergingChecks = 0;
+		}
+
+		lastCheckedArea = maskArea;
+		lastCheckedJaccard = jaccard;
+
+		isRejected = divergingChecks >= REJECTION_CHECKS;
+
+		return isRejected;
+	}
+
+	/**
+	 * Whether the attempt should stop before the next iteration.
+	 *
+	 * @return True if the attempt is cancelled or rejected.
+	 */
+	public boolean isStopped()
+	{
+		return isCancelled || isRejected;
+	}
+
+	/**
+	 * Whether the attempt has been rejected while it evolved.
+	 *
+	 * @return True if the mask kept breaking the acceptance rule.
+	 */
+	public boolean isRejected()
+	{
+		return isRejected;
+	}
+
+	/**
+	 * Cancel the attempt, which stops at its next iteration.
+	 */
+	public void cancel()
+	{
+		isCancelled = true;
+	}
+
+	/**
+	 * Jaccard index of the mask of phi and the previous mask.
+	 */
+	private double calculateJaccard(Field2D phi)
+	{
+		final double[] data = phi.getData();
+
+		int intersection = 0;
+		int union = 0;
+		for (int idx = 0; idx < data.length; idx++)
+		{
+			final boolean isInside = data[idx] >= boundaryValue;
+
+			if (isInside && lastMask[idx])
+			{
+				intersection++;
+			}
+			if (isInside || lastMask[idx])
+			{
+				union++;
+			}
+		}
+
+		return (double) intersection / union;
+	}
+
+}
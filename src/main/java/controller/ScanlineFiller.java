@@ -0,0 +1,202 @@
+package controller;
+
+import utils.BitMask2D;
+
+/**
+ * Fills the holes in a brain mask by flood-filling the background from the border of the image.
+ * Every background pixel that the fill cannot reach is enclosed by the mask and is filled. Unlike
+ * {@link Filler}, which probes for holes along rays from the center of the mask, it finds holes
+ * of any shape, and it visits each pixel a bounded number of times.
+ *
+ * The background is 4-connected, and is filled a horizontal span at a time with a stack of seed
+ * pixels, so the working set is a packed mask of the reached pixels and a small stack. The holes
+ * are filled with the value of the mask, which is that of its first pixel in row-major order as
+ * in {@link Filler}.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class ScanlineFiller
+{
+
+	/** Initial capacity of the seed stack. */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** The width of the given array. */
+	private final int width;
+
+	/** The height of the given array. */
+	private final int height;
+
+	/** The filled array. */
+	private final byte[][] filledArray;
+
+	/** The background pixels reached from the border. */
+	private BitMask2D reached;
+
+	/** Indices of the pixels to fill from. */
+	private int[] seeds = new int[INITIAL_CAPACITY];
+
+	/** The number of seeds in the stack. */
+	private int seedCount = 0;
+
+	/**
+	 * Constructor. The holes are filled in the given array.
+	 *
+	 * @param array A byte array to fill holes, where positive values are the mask.
+	 */
+	public ScanlineFiller(byte[][] array)
+	{
+		if (array == null || array.length == 0 || array[0].length == 0)
+		{
+			width = 0;
+			height = 0;
+			filledArray = array;
+			return;
+		}
+
+		width = array.length;
+		height = array[0].length;
+		filledArray = fillHoles(array);
+	}
+
+	/**
+	 * Returns the filled array.
+	 *
+	 * @return The hole-filled array.
+	 */
+	public byte[][] getFilledArray()
+	{
+		return filledArray;
+	}
+
+	/**
+	 * Fill the holes in the mask.
+	 */
+	private byte[][] fillHoles(byte[][] array)
+	{
+		reached = new BitMask2D(width, height);
+
+		// Seed the background on the border
+		for (int x = 0; x < width; x++)
+		{
+			pushIfBackground(array, x, 0);
+			pushIfBackground(array, x, height - 1);
+		}
+		for (int y = 1; y < height - 1; y++)
+		{
+			pushIfBackground(array, 0, y);
+			pushIfBackground(array, width - 1, y);
+		}
+
+		while (seedCount > 0)
+		{
+			final int seed = seeds[--seedCount];
+			final int y = seed / width;
+
+			if (reached.get(seed))
+			{
+				continue;
+			}
+
+			// Extend the span of the seed to the left and right
+			int left = seed % width;
+			while (left > 0 && isUnreachedBackground(array, left - 1, y))
+			{
+				left--;
+			}
+			int right = seed % width;
+			while (right < width - 1 && isUnreachedBackground(array, right + 1, y))
+			{
+				right++;
+			}
+
+			for (int x = left; x <= right; x++)
+			{
+				reached.set(y * width + x);
+			}
+
+			// Seed each run of background above and below the span
+			if (y > 0)
+			{
+				pushRuns(array, left, right, y - 1);
+			}
+			if (y < height - 1)
+			{
+				pushRuns(array, left, right, y + 1);
+			}
+		}
+
+		// The background that is not reached lies in holes. A hole has mask pixels in the rows
+		// above it, so the mask value is known by the time the hole is met.
+		byte maskValue = 0;
+		for (int y = 0, idx = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++, idx++)
+			{
+				if (array[x][y] > 0)
+				{
+					if (maskValue == 0)
+					{
+						maskValue = array[x][y];
+					}
+				} else if (!reached.get(idx))
+				{
+					array[x][y] = maskValue;
+				}
+			}
+		}
+
+		reached = null;
+		seeds = null;
+
+		return array;
+	}
+
+	/**
+	 * Push a seed for each run of unreached background pixels in [left, right] of row y.
+	 */
+	private void pushRuns(byte[][] array, int left, int right, int y)
+	{
+		boolean isInRun = false;
+		for (int x = left; x <= right; x++)
+		{
+			if (isUnreachedBackground(array, x, y))
+			{
+				if (!isInRun)
+				{
+					push(y * width + x);
+					isInRun = true;
+				}
+			} else
+			{
+				isInRun = false;
+			}
+		}
+	}
+
+	private void pushIfBackground(byte[][] array, int x, int y)
+	{
+		if (isUnreachedBackground(array, x, y))
+		{
+			push(y * width + x);
+		}
+	}
+
+	private boolean isUnreachedBackground(byte[][] array, int x, int y)
+	{
+		return array[x][y] <= 0 && !reached.get(y * width + x);
+	}
+
+	private void push(int idx)
+	{
+		if (seedCount == seeds.length)
+		{
+			final int[] grown = new int[seeds.length * 2];
+			System.arraycopy(seeds, 0, grown, 0, seedCount);
+			seeds = grown;
+		}
+		seeds[seedCount++] = idx;
+	}
+
+}
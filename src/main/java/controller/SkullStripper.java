@@ -16,14 +16,19 @@ import ij.ImagePlus;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 
 import texture.GLCM;
+import utils.BitMask2D;
 import utils.Calculator;
+import utils.DirectionalExtrema;
+import utils.Field2D;
 import utils.LSConstants.LevelsetType;
+import utils.LSConstants.ReinitMethod;
 import utils.LSUtil;
-import view.CustomWindow;
+import utils.NarrowBand;
+import utils.PixelAccess;
+import view.ContourPreview;
 
 /**
  * Class to apply level set algorithm to a 2D image.
@@ -74,6 +79,21 @@ public class SkullStripper
 	/** Maximum oscillations to reach stability */
 	private int STATN_MAX = 4;
 
+	/** Mean change of phi around the zero level set per iteration below which it is still. */
+	private static final double CONVERGENCE_TOLERANCE = 1e-3;
+
+	/** The number of consecutive still iterations after which the evolution has converged. */
+	private static final int CONVERGED_ITERATIONS = 8;
+
+	/** Whether the evolution stops once phi around the zero level set stops changing. */
+	private boolean isAdaptiveStopEnabled = false;
+
+	/**
+	 * Iterations of the last evolution if it converged or became stationary; -1 if it was stopped
+	 * otherwise, e.g. by the maximum iterations.
+	 */
+	private int convergedIterations = -1;
+
 	/** Calculates level set functions */
 	private Calculator calculator;
 
@@ -99,13 +119,30 @@ public class SkullStripper
 
 	private Color contourColor;
 
+	/** Intensities of the slice in row-major order, converted on first use. */
+	private short[] inputArray;
+
+	/** Texture of the slice, prepared on first use and released once the slice is done. */
 	private GLCM textureImg;
 
 	private LevelsetType levelsetType;
 
 	private double textureCoefficient = 0;
 
-	private static CustomWindow customWindow;
+	/** Whether only the pixels in the narrow band are updated in each iteration. */
+	private boolean isNarrowBandEnabled = false;
+
+	/** Active pixels around the zero level set, created on the first narrow band evolution. */
+	private NarrowBand narrowBand;
+
+	/** Whether the intensity force looks up precomputed directional extrema. */
+	private boolean isDirectionalExtremaEnabled = false;
+
+	/** Intensity extrema of the slice, built on the first evolution and kept for the retries. */
+	private DirectionalExtrema directionalExtrema;
+
+	/** Preview to publish the evolving phi to, or null when there is no window. */
+	private ContourPreview contourPreview;
 
 	/**
 	 * Class to apply level set algorithm to a 2D image.
@@ -128,17 +165,74 @@ public class SkullStripper
 		this.imgPlus = imgPlus;
 		this.contourColor = contourColor;
 
-		if (LevelsetType.Texture == levelsetType)
-		{
-			this.textureImg = new GLCM(_inputImage, 8, 1, 0, 0, 7, 4);
-		}
-
 		this.levelsetType = levelsetType;
 
 		this.textureCoefficient = textureCoefficient;
 
 	}
 
+	/**
+	 * Copy a SkullStripper for an independent evolution of the same slice, e.g. a speculative
+	 * retry. The copy shares the read-only intensities, texture and intensity extrema of the
+	 * slice, which are prepared here if needed, and copies the evolution state, so the two can
+	 * evolve concurrently. The copy does not publish to the preview.
+	 */
+	private SkullStripper(SkullStripper skullStripper)
+	{
+		X_DIM = skullStripper.X_DIM;
+		Y_DIM = skullStripper.Y_DIM;
+
+		_inputImage = skullStripper._inputImage;
+		imgPlus = skullStripper.imgPlus;
+		contourColor = skullStripper.contourColor;
+		levelsetType = skullStripper.levelsetType;
+		textureCoefficient = skullStripper.textureCoefficient;
+
+		_bitsPP = skullStripper._bitsPP;
+		_intensityOfMask = skullStripper._intensityOfMask;
+		_centerX = skullStripper._centerX;
+		_centerY = skullStripper._centerY;
+		_radius = skullStripper._radius;
+		intens2 = skullStripper.intens2;
+		intens10 = skullStripper.intens10;
+		intens98 = skullStripper.intens98;
+		_lastMaskArea = skullStripper._lastMaskArea;
+		_lastLastMaskArea = skullStripper._lastLastMaskArea;
+		_statnCounter = skullStripper._statnCounter;
+		isNarrowBandEnabled = skullStripper.isNarrowBandEnabled;
+		isAdaptiveStopEnabled = skullStripper.isAdaptiveStopEnabled;
+		isDirectionalExtremaEnabled = skullStripper.isDirectionalExtremaEnabled;
+
+		inputArray = skullStripper.getInputArray();
+		textureImg = skullStripper.getTexture();
+		directionalExtrema =
+				isDirectionalExtremaEnabled ? skullStripper.getDirectionalExtrema() : null;
+
+		calculator = new Calculator(skullStripper.calculator);
+	}
+
+	/**
+	 * Copy this SkullStripper for an independent evolution of the same slice.
+	 * 
+	 * @return A SkullStripper object.
+	 */
+	public SkullStripper copy()
+	{
+		return new SkullStripper(this);
+	}
+
+	/**
+	 * Take over the result of an evolution on a copy of this SkullStripper, i.e. its output array
+	 * and iterations.
+	 * 
+	 * @param copy A SkullStripper created by {@link #copy()}.
+	 */
+	public void takeOver(SkullStripper copy)
+	{
+		_outputArray = copy._outputArray;
+		convergedIterations = copy.convergedIterations;
+	}
+
 	/**
 	 * Calculate the probing distance which is used for calculating the image- based force. The
 	 * distance for searching minimum intensity is dependent upon the subject's age, and the
@@ -154,34 +248,45 @@ public class SkullStripper
 	}
 
 	/**
-	 * Create a 2D array to store the image data.
+	 * Create a flat array to store the image data in row-major order, i.e. the sample of (x, y)
+	 * lies at index y * width + x.
 	 */
-	public short[][] create2DArray(BufferedImage bImg)
+	public short[] createInputArray(BufferedImage bImg)
 	{
-		// New !!
-		// BufferedImage normalizedImg = LSUtil.rescaleImage(bImg, 0, 32767);
-
-		// Get the raster of the bImg
-		Raster raster = bImg.getRaster();
-		int xOffset = 0;
-		int yOffset = 0;
-		short[][] array = new short[bImg.getWidth()][bImg.getHeight()];
+		final int[] samples = PixelAccess.getSamples(bImg, null);
+		short[] array = new short[X_DIM * Y_DIM];
 
-		// Offset to get the interesting region, set manually
-		int tempInt;
-		for (int y = 0; y < Y_DIM; y++)
+		for (int idx = 0; idx < array.length; idx++)
 		{
-			for (int x = 0; x < X_DIM; x++)
-			{
-				tempInt = raster.getSample(x + xOffset, y + yOffset, 0);
-
-				tempInt &= 0xffff;
-				array[x][y] = (short) tempInt;
-			}
+			array[idx] = (short) samples[idx];
 		}
 		return array;
 	}
 
+	/**
+	 * Gets the intensities of the input image in row-major order. The image is converted on the
+	 * first call and the array is shared by the later ones, e.g. the retries of the slice, until
+	 * it is released.
+	 * 
+	 * @return A short array, which must not be modified.
+	 */
+	public synchronized short[] getInputArray()
+	{
+		if (inputArray == null)
+		{
+			inputArray = createInputArray(_inputImage);
+		}
+		return inputArray;
+	}
+
+	/**
+	 * Release the intensities of the input image once the slice is done.
+	 */
+	public synchronized void releaseInputArray()
+	{
+		inputArray = null;
+	}
+
 	/**
 	 * Gets the initial parameters of the zero level set.
 	 * 
@@ -344,24 +449,133 @@ public class SkullStripper
 		calculator.setVelocity(velocity);
 	}
 
+	/**
+	 * Set the method to reinitialize phi after each evolution step and when shrinking phi.
+	 * 
+	 * @param reinitMethod Sussman's iterative method or fast sweeping.
+	 */
+	public void setReinitMethod(ReinitMethod reinitMethod)
+	{
+		calculator.setReinitMethod(reinitMethod);
+	}
+
+	/**
+	 * Set whether the evolution stops once the mean change of phi around the zero level set stays
+	 * below a tolerance for several iterations, in addition to the stationarity of the mask area.
+	 * 
+	 * @param isAdaptiveStopEnabled True to stop once phi converges.
+	 */
+	public void setAdaptiveStopEnabled(boolean isAdaptiveStopEnabled)
+	{
+		this.isAdaptiveStopEnabled = isAdaptiveStopEnabled;
+	}
+
+	/**
+	 * Gets the iterations of the last evolution if it converged or became stationary.
+	 * 
+	 * @return The number of iterations, or -1 if the evolution did not converge.
+	 */
+	public int getConvergedIterations()
+	{
+		return convergedIterations;
+	}
+
+	/**
+	 * Set whether the evolution only updates the pixels in the narrow band.
+	 * 
+	 * @param isNarrowBandEnabled True to evolve the narrow band only; false to evolve the whole
+	 *        grid.
+	 */
+	public void setNarrowBandEnabled(boolean isNarrowBandEnabled)
+	{
+		this.isNarrowBandEnabled = isNarrowBandEnabled;
+	}
+
+	/**
+	 * Set whether the intensity force looks up the intensity extrema precomputed along 16
+	 * quantized normal directions, instead of probing the image along the exact normal.
+	 * 
+	 * @param isDirectionalExtremaEnabled True to look up the precomputed extrema; false to probe.
+	 */
+	public void setDirectionalExtremaEnabled(boolean isDirectionalExtremaEnabled)
+	{
+		this.isDirectionalExtremaEnabled = isDirectionalExtremaEnabled;
+	}
+
+	/**
+	 * Prepare the texture of the slice if the texture model is selected and the texture is not
+	 * prepared yet. It may be called ahead of the evolution from another thread, in which case
+	 * the evolution waits for it to finish.
+	 */
+	public synchronized void prepareTexture()
+	{
+		if (LevelsetType.Texture == levelsetType && textureImg == null)
+		{
+			textureImg = new GLCM(_inputImage, 8, 1, 0, 0, 7, 4);
+		}
+	}
+
+	/**
+	 * Gets the texture of the slice, preparing it if needed.
+	 * 
+	 * @return A GLCM object, or null if the texture model is not selected.
+	 */
+	private synchronized GLCM getTexture()
+	{
+		prepareTexture();
+		return textureImg;
+	}
+
+	/**
+	 * Release the texture once the slice is done.
+	 */
+	public synchronized void releaseTexture()
+	{
+		textureImg = null;
+	}
+
+	/**
+	 * Gets the intensity extrema of the slice, building them if needed.
+	 * 
+	 * @return A DirectionalExtrema object.
+	 */
+	private synchronized DirectionalExtrema getDirectionalExtrema()
+	{
+		if (directionalExtrema == null)
+		{
+			directionalExtrema = calculator.createDirectionalExtrema(getInputArray());
+		}
+		return directionalExtrema;
+	}
+
+	/**
+	 * Release the precomputed intensity extrema once the slice is done.
+	 */
+	public synchronized void releaseDirectionalExtrema()
+	{
+		directionalExtrema = null;
+		calculator.setDirectionalExtrema(null);
+	}
+
 	/**
 	 * Shrink phi.
 	 * 
-	 * @param phi The array of phi.
+	 * @param phi The grid of phi, which is left unchanged.
 	 * @param DIST Distance to shrink zero level set.
 	 */
-	public double[][] shrinkPhiZero(double[][] phi, int DIST)
+	public Field2D shrinkPhiZero(Field2D phi, int DIST)
 	{
+		// Work on a copy since the reinitialization may update phi in place
+		phi = phi.copy();
+
 		for (int k = 0; k < DIST; k++)
 		{
 
 			// Move zero contour inward
-			for (int y = 0; y < phi[0].length; y++)
+			final double[] data = phi.getData();
+			for (int idx = 0; idx < data.length; idx++)
 			{
-				for (int x = 0; x < phi.length; x++)
-				{
-					phi[x][y] = phi[x][y] - 1;
-				}
+				data[idx] = data[idx] - 1;
 			}
 
 			// reinialize phi
@@ -375,10 +589,24 @@ public class SkullStripper
 	 * Skull strips a 2D brain image with the given initial phi.
 	 * 
 	 * @param masIter Maximum interations to run.
-	 * @param phi0 The phi array.
-	 * @return A phi array.
+	 * @param phi0 The phi grid.
+	 * @return A phi grid.
+	 */
+	public Field2D skullStrip(int maxIter, Field2D phi0, int sliceNo)
+	{
+		return skullStrip(maxIter, phi0, sliceNo, null);
+	}
+
+	/**
+	 * Skull strips a 2D brain image with the given initial phi, stopping early if the monitor
+	 * rejects or cancels the evolution.
+	 * 
+	 * @param masIter Maximum interations to run.
+	 * @param phi0 The phi grid.
+	 * @param monitor An EvolutionMonitor object, or null to evolve until stationary.
+	 * @return A phi grid.
 	 */
-	public double[][] skullStrip(int maxIter, double[][] phi0, int sliceNo)
+	public Field2D skullStrip(int maxIter, Field2D phi0, int sliceNo, EvolutionMonitor monitor)
 	{
 		if (phi0 == null)
 		{
@@ -391,19 +619,24 @@ public class SkullStripper
 		{
 			IJ.log("Mask area < 0");
 			_outputArray = calculator.convertToBinaryArray(phi0);
+			convergedIterations = -1;
 			return phi0;
 		}
 
 		int maskArea = 0;
-		short[][] inputArray = create2DArray(_inputImage);
+		final short[] inputArray = getInputArray();
 		int timer = 0;
-		double[][] delta_eps;
-		double[][] f;
-		double[][] phi = null;
+		Field2D delta_eps = null;
+		Field2D f;
+		double[] bandForce;
+		Field2D phi = null;
 		double intensM = 0;
 		boolean isStationary = false;
+		boolean isConverged = false;
+		int stillIterations = 0;
+		double meanChange = 0;
 
-		double[][] phiNew = phi0;
+		Field2D phiNew = phi0;
 		_outputArray = calculator.convertToBinaryArray(phiNew);
 
 		// If initial mask area is too small, use _intens10 as intensM
@@ -411,41 +644,117 @@ public class SkullStripper
 				(LSUtil.calculateMaskArea(phi0, BOUNDARY_VALUE) <= 200) ? intens10 : calculator
 						.calculateMedianIntensity(phiNew, inputArray);
 
-		imgPlus.setSlice(sliceNo);
+		// The slice does not change during the evolution, and imgPlus is shared by the
+		// evolutions of the slices before and after the center. Without a preview, e.g. in batch
+		// mode, the slice image is not needed.
+		ContourPreview.Slice previewSlice = null;
+		if (contourPreview != null)
+		{
+			final BufferedImage grayImage;
+			synchronized (imgPlus)
+			{
+				imgPlus.setSlice(sliceNo + 1);
+				grayImage = imgPlus.getBufferedImage();
+			}
+			previewSlice = contourPreview.createSlice(grayImage, contourColor);
+		}
+
+		// The texture is only needed if the contour evolves, and is kept for the retries
+		final GLCM texture = maxIter > 0 ? getTexture() : null;
+
+		// The extrema only depend on the slice, so they are reused by the retries
+		calculator.setDirectionalExtrema(isDirectionalExtremaEnabled ? getDirectionalExtrema()
+				: null);
+
+		// The band is rebuilt from the whole grid on its first update. Phi is then evolved in
+		// place, so it is copied once to leave phi0 to the caller.
+		if (isNarrowBandEnabled)
+		{
+			if (narrowBand == null)
+			{
+				narrowBand = calculator.createNarrowBand();
+			}
+			narrowBand.clear();
+
+			phiNew = phi0.copy();
+		}
 
 		// when the zero level set is stationary, stop iterating
 		// When the interation exceeds the max iteration numbers, stop iterating
-		while ((!isStationary) && timer < maxIter)
+		while ((!isStationary) && !isConverged && timer < maxIter
+				&& (monitor == null || !monitor.isStopped()))
 		{
 
 			// update phi
 			phi = phiNew;
 
-			// Narrow band
-			delta_eps = calculator.calculateHEpsilonAndDeltaEpsilon3(phi);
+			if (isNarrowBandEnabled)
+			{
+				// Move the narrow band along with the zero level set
+				narrowBand.update(phi);
+
+				// Calculate image force of the band pixels
+				bandForce =
+						calculator.calculateImageForce(phi, narrowBand, inputArray, intens2,
+								intens10, intensM, intens98, levelsetType, texture,
+								textureCoefficient);
+
+				// Update the band pixels of phi and reinitialize the tube around them
+				calculator.updatePhi(phi, narrowBand, bandForce);
+				calculator.reinitialize(phi, narrowBand);
+				phiNew = phi;
+			} else
+			{
+				// Narrow band
+				delta_eps = calculator.calculateHEpsilonAndDeltaEpsilon3(phi);
 
-			// Calculate image force: 1. Gradient force 2. Texture force
-			f =
-					calculator.calculateImageForce(phi, delta_eps, inputArray, intens2, intens10,
-							intensM, intens98, levelsetType, textureImg, textureCoefficient);
+				// Calculate image force: 1. Gradient force 2. Texture force
+				f =
+						calculator.calculateImageForce(phi, delta_eps, inputArray, intens2,
+								intens10, intensM, intens98, levelsetType, texture,
+								textureCoefficient);
 
-			// Calculate phi1new
-			phiNew = calculator.calculatePhiNew2(phi, delta_eps, f);
+				// Calculate phi1new
+				phiNew = calculator.calculatePhiNew2(phi, delta_eps, f);
+
+				// Reinitialization
+				phiNew = calculator.reinitialize(phiNew);
+			}
 
-			// Reinitialization
-			phiNew = calculator.reinitialize(phiNew);
+			// Converged once phi around the zero level set has been still for a while
+			if (isAdaptiveStopEnabled)
+			{
+				meanChange =
+						isNarrowBandEnabled ? calculator.calculateMeanChange(phiNew, narrowBand)
+								: calculator.calculateMeanChange(phi, phiNew, delta_eps);
+				stillIterations = meanChange < CONVERGENCE_TOLERANCE ? stillIterations + 1 : 0;
+				isConverged = stillIterations >= CONVERGED_ITERATIONS;
+			}
 
-			// Update contour on the GUI
-			final BufferedImage contouredImage =
-					LSUtil.layContourOnImage(LSUtil.convertGrayToRGB(imgPlus.getBufferedImage()),
-							calculator.convertToBinaryArray(phi), contourColor);
-			customWindow.setOriginalImage(contouredImage);
+			// Publish the contour to the GUI, which renders it at its own pace. PhiNew is not
+			// modified afterwards since the next step writes a new phi, whereas the band evolves
+			// phi in place, so a copy is published once the previous one has been rendered.
+			if (contourPreview != null)
+			{
+				if (!isNarrowBandEnabled)
+				{
+					contourPreview.publish(previewSlice, phiNew);
+				} else if (contourPreview.isRendered())
+				{
+					contourPreview.publish(previewSlice, phiNew.copy());
+				}
+			}
 
 			// calculate the area of brain mask
 			if (timer % 8 == 0)
 			{
 				maskArea = LSUtil.calculateMaskArea(phiNew, BOUNDARY_VALUE);
 				isStationary = _isPhiStationary(maskArea);
+
+				if (monitor != null)
+				{
+					monitor.check(phiNew, maskArea);
+				}
 			}
 
 			timer++;
@@ -457,14 +766,38 @@ public class SkullStripper
 			_outputArray = calculator.convertToBinaryArray(phiNew);
 		}
 
+		if (contourPreview != null && isNarrowBandEnabled && timer > 0)
+		{
+			contourPreview.publish(previewSlice, phiNew.copy());
+		}
+
 		IJ.log("Timer: " + timer);
 
+		// Only evolutions that came to rest tell how many iterations the slice needed
+		if (maxIter > 0 && (isStationary || isConverged))
+		{
+			convergedIterations = timer;
+			IJ.log(isConverged ? "Converged, mean change " + meanChange : "Stationary");
+		} else
+		{
+			convergedIterations = -1;
+			if (maxIter > 0)
+			{
+				IJ.log("Stopped at " + timer + " of " + maxIter + " iterations");
+			}
+		}
+
 		return phiNew;
 	}
 
-	public void setCustomWindow(CustomWindow customWindow)
+	/**
+	 * Set the preview to publish the evolving phi to.
+	 * 
+	 * @param contourPreview A ContourPreview object, or null to disable the preview.
+	 */
+	public void setContourPreview(ContourPreview contourPreview)
 	{
-		this.customWindow = customWindow;
+		this.contourPreview = contourPreview;
 	}
 
 	/**
@@ -478,15 +811,14 @@ public class SkullStripper
 		BufferedImage contourImage = new BufferedImage(X_DIM, Y_DIM, BufferedImage.TYPE_INT_ARGB);
 		int rgb = (0xff << 24) | (0xff << 16) | (0xf << 8); // red
 		// int rgb = (0xff << 24) |(0xff << 16) | (0xff << 8) | 0xff;//white
-		long tempLong;
+
+		// Holes are filled with the mask value, so the mask is binary
+		final BitMask2D contour = BitMask2D.fromArray(array).findContour();
 		for (int y = 1; y < Y_DIM - 1; y++)
 		{
 			for (int x = 1; x < X_DIM - 1; x++)
 			{
-				tempLong =
-						4 * array[x][y] - array[x][y - 1] - array[x][y + 1] - array[x - 1][y]
-								- array[x + 1][y];
-				if (tempLong != 0)
+				if (contour.get(x, y))
 				{
 					contourImage.setRGB(x, y, rgb);
 				}
@@ -566,41 +898,39 @@ public class SkullStripper
 		BufferedImage outputImage =
 				new BufferedImage(inputImage.getWidth(), inputImage.getHeight(), imageType);
 
-		Raster inputRaster = inputImage.getRaster();
-		WritableRaster outputRaster = outputImage.getRaster();
+		final int[] samples = PixelAccess.getSamples(inputImage, null);
 		int width = inputImage.getWidth();
 		int height = inputImage.getHeight();
-		int tempInt;
-		for (int y = 0; y < height; y++)
+		for (int y = 0, idx = 0; y < height; y++)
 		{
-			for (int x = 0; x < width; x++)
+			for (int x = 0; x < width; x++, idx++)
 			{
-				if (outputArray[x][y] > 0)
+				if (outputArray[x][y] <= 0)
 				{
-
-					tempInt = inputRaster.getSample(x, y, 0);
-					outputRaster.setSample(x, y, 0, tempInt);
+					samples[idx] = 0;
 				}
 			}
 		}
+		PixelAccess.setSamples(outputImage, samples);
 		return outputImage;
 	}
 
 	/**
 	 * Initialize phi
 	 * 
-	 * @return A double array.
+	 * @return A Field2D object.
 	 */
-	public double[][] initializePhi()
+	public Field2D initializePhi()
 	{
-		final double[][] phi = new double[X_DIM][Y_DIM];
+		final Field2D phi = new Field2D(X_DIM, Y_DIM);
+		final double[] data = phi.getData();
 
 		double temp1, temp2, temp3;
 
 		// phi1_0 = -sqrt((x-centerX)^2 + (y-centerY)^2) + radius
-		for (int y = 0; y < Y_DIM; y++)
+		for (int y = 0, idx = 0; y < Y_DIM; y++)
 		{
-			for (int x = 0; x < X_DIM; x++)
+			for (int x = 0; x < X_DIM; x++, idx++)
 			{
 				temp1 = (x - _centerX) * (x - _centerX);
 				temp2 = (y - _centerY) * (y - _centerY);
@@ -609,7 +939,7 @@ public class SkullStripper
 				// with radius _radius
 				temp3 = -Math.sqrt(temp1 + temp2) + _radius;
 
-				phi[x][y] = temp3;
+				data[idx] = temp3;
 			}
 		}
 
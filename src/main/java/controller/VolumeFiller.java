@@ -0,0 +1,425 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import utils.BitMask3D;
+
+/**
+ * Fills the holes in a stack of brain masks as a volume. The 6-connected background is
+ * flood-filled from the border of the volume, and every background voxel that the fill cannot
+ * reach is enclosed by the mask in 3D and is filled, e.g. the ventricles. Cavities that are only
+ * closed within a slice but open to the background through a neighbouring slice are not filled.
+ * The holes of each slice are filled with the value of its mask, which is that of its first mask
+ * pixel in row-major order as in {@link Filler}, so the filled masks stay binary.
+ *
+ * The masks are packed into a {@link BitMask3D} and the volume is cut into slabs of planes, which
+ * are flooded in parallel a span of voxels at a time. Each slab is first flooded from the border
+ * of the volume; then, until no slab gains a seed, each slab is seeded with the background of its
+ * boundary planes that the neighbouring slabs have reached, and flooded again.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class VolumeFiller
+{
+
+	/** Initial capacity of the seed stack of a slab. */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/** The masks of the slices, each indexed by [x][y]. */
+	private final List<byte[][]> arrays;
+
+	private int width;
+
+	private int height;
+
+	private final int depth;
+
+	/** The mask voxels. */
+	private BitMask3D mask;
+
+	/** The background voxels reached from the border of the volume. */
+	private BitMask3D reached;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param arrays The masks of the slices in order, where positive values are the mask. A null
+	 *        mask is taken as empty.
+	 */
+	public VolumeFiller(List<byte[][]> arrays)
+	{
+		this.arrays = arrays;
+		depth = arrays.size();
+
+		for (byte[][] array : arrays)
+		{
+			if (array != null && array.length > 0)
+			{
+				width = array.length;
+				height = array[0].length;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Fill the holes in the masks, in place.
+	 *
+	 * @return The number of filled voxels.
+	 * @throws InterruptedException If interrupted while waiting for the slabs.
+	 * @throws ExecutionException If a slab fails.
+	 */
+	public int fill() throws InterruptedException, ExecutionException
+	{
+		if (width * height * depth == 0)
+		{
+			return 0;
+		}
+
+		mask = new BitMask3D(width, height, depth);
+		reached = new BitMask3D(width, height, depth);
+
+		final int slabCount = Math.min(Runtime.getRuntime().availableProcessors(), depth);
+		final List<Slab> slabs = new ArrayList<Slab>();
+		for (int i = 0; i < slabCount; i++)
+		{
+			slabs.add(new Slab(depth * i / slabCount, depth * (i + 1) / slabCount));
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(slabCount);
+
+		try
+		{
+			run(executor, slabs, Slab.PACK);
+			run(executor, slabs, Slab.FLOOD_FROM_BORDER);
+
+			// Merge the slabs across their boundary planes
+			while (run(executor, slabs, Slab.SEED_FROM_NEIGHBOURS) > 0)
+			{
+				run(executor, slabs, Slab.FLOOD);
+			}
+
+			return run(executor, slabs, Slab.FILL);
+
+		} finally
+		{
+			executor.shutdown();
+			mask = null;
+			reached = null;
+		}
+	}
+
+	/**
+	 * Run a phase on all slabs and wait for them.
+	 *
+	 * @return The sum of the results of the slabs.
+	 */
+	private int run(ExecutorService executor, List<Slab> slabs, int phase)
+			throws InterruptedException, ExecutionException
+	{
+		final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (Slab slab : slabs)
+		{
+			tasks.add(slab.createTask(phase));
+		}
+
+		int sum = 0;
+		for (Future<Integer> future : executor.invokeAll(tasks))
+		{
+			sum += future.get();
+		}
+		return sum;
+	}
+
+	/**
+	 * Planes [z0, z1) of the volume, which are only written by the thread running the slab.
+	 */
+	private class Slab
+	{
+		static final int PACK = 0;
+		static final int FLOOD_FROM_BORDER = 1;
+		static final int SEED_FROM_NEIGHBOURS = 2;
+		static final int FLOOD = 3;
+		static final int FILL = 4;
+
+		private final int z0;
+
+		private final int z1;
+
+		/** Seeds as pairs of the index of a voxel in its plane and the index of the plane. */
+		private int[] seeds = new int[INITIAL_CAPACITY];
+
+		private int seedCount = 0;
+
+		Slab(int z0, int z1)
+		{
+			this.z0 = z0;
+			this.z1 = z1;
+		}
+
+		Callable<Integer> createTask(final int phase)
+		{
+			return new Callable<Integer>()
+			{
+				@Override
+				public Integer call()
+				{
+					switch (phase)
+					{
+					case PACK:
+						pack();
+						return 0;
+					case FLOOD_FROM_BORDER:
+						seedBorder();
+						flood();
+						return 0;
+					case SEED_FROM_NEIGHBOURS:
+						return seedFromNeighbours();
+					case FLOOD:
+						flood();
+						return 0;
+					default:
+						return fillHoles();
+					}
+				}
+			};
+		}
+
+		private void pack()
+		{
+			for (int z = z0; z < z1; z++)
+			{
+				final byte[][] array = arrays.get(z);
+				if (array == null)
+				{
+					continue;
+				}
+
+				for (int x = 0; x < width; x++)
+				{
+					for (int y = 0; y < height; y++)
+					{
+						if (array[x][y] > 0)
+						{
+							mask.set(x, y, z);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Seed the background on the border of the volume.
+		 */
+		private void seedBorder()
+		{
+			for (int z = z0; z < z1; z++)
+			{
+				if (z == 0 || z == depth - 1)
+				{
+					for (int y = 0; y < height; y++)
+					{
+						pushRuns(y * width, 0, width - 1, z);
+					}
+					continue;
+				}
+
+				pushRuns(0, 0, width - 1, z);
+				pushRuns((height - 1) * width, 0, width - 1, z);
+
+				for (int y = 1; y < height - 1; y++)
+				{
+					pushIfOpen(y * width, z);
+					pushIfOpen(y * width + width - 1, z);
+				}
+			}
+		}
+
+		/**
+		 * Seed the background of the boundary planes that the neighbouring slabs have reached
+		 * next to it.
+		 *
+		 * @return The number of seeds.
+		 */
+		private int seedFromNeighbours()
+		{
+			if (z0 > 0)
+			{
+				seedFrom(z0 - 1, z0);
+			}
+			if (z1 < depth)
+			{
+				seedFrom(z1, z1 - 1);
+			}
+			return seedCount / 2;
+		}
+
+		private void seedFrom(int neighbourZ, int z)
+		{
+			for (int i = 0; i < mask.getWordsPerPlane(); i++)
+			{
+				long word = reached.getWord(neighbourZ, i) & ~reached.getWord(z, i)
+						& ~mask.getWord(z, i);
+
+				while (word != 0)
+				{
+					push((i << 6) + Long.numberOfTrailingZeros(word), z);
+					word &= word - 1;
+				}
+			}
+		}
+
+		/**
+		 * Flood the background of the slab from the seeds, a span of a row at a time.
+		 */
+		private void flood()
+		{
+			while (seedCount > 0)
+			{
+				final int z = seeds[--seedCount];
+				final int idx = seeds[--seedCount];
+
+				if (!isOpen(idx, z))
+				{
+					continue;
+				}
+
+				final int rowStart = idx - idx % width;
+
+				// Extend the span of the seed to the left and right
+				int left = idx - rowStart;
+				while (left > 0 && isOpen(rowStart + left - 1, z))
+				{
+					left--;
+				}
+				int right = idx - rowStart;
+				while (right < width - 1 && isOpen(rowStart + right + 1, z))
+				{
+					right++;
+				}
+
+				for (int x = left; x <= right; x++)
+				{
+					reached.set(rowStart + x, z);
+				}
+
+				// Seed each run of background next to the span in the slab
+				if (rowStart > 0)
+				{
+					pushRuns(rowStart - width, left, right, z);
+				}
+				if (rowStart + width < width * height)
+				{
+					pushRuns(rowStart + width, left, right, z);
+				}
+				if (z > z0)
+				{
+					pushRuns(rowStart, left, right, z - 1);
+				}
+				if (z < z1 - 1)
+				{
+					pushRuns(rowStart, left, right, z + 1);
+				}
+			}
+		}
+
+		/**
+		 * Fill the background of the slab that has not been reached.
+		 *
+		 * @return The number of filled voxels.
+		 */
+		private int fillHoles()
+		{
+			int filled = 0;
+			for (int z = z0; z < z1; z++)
+			{
+				final byte[][] array = arrays.get(z);
+				if (array == null)
+				{
+					continue;
+				}
+
+				// An open voxel has mask voxels in the rows above it, since the column above it
+				// would otherwise be reached from the border, so the mask value is known by then
+				byte maskValue = 0;
+				for (int y = 0, idx = 0; y < height; y++)
+				{
+					for (int x = 0; x < width; x++, idx++)
+					{
+						if (array[x][y] > 0)
+						{
+							if (maskValue == 0)
+							{
+								maskValue = array[x][y];
+							}
+						} else if (isOpen(idx, z))
+						{
+							array[x][y] = maskValue;
+							filled++;
+						}
+					}
+				}
+			}
+			return filled;
+		}
+
+		/**
+		 * Push a seed for each run of open voxels in [left, right] of the row starting at
+		 * rowStart in plane z.
+		 */
+		private void pushRuns(int rowStart, int left, int right, int z)
+		{
+			boolean isInRun = false;
+			for (int x = left; x <= right; x++)
+			{
+				if (isOpen(rowStart + x, z))
+				{
+					if (!isInRun)
+					{
+						push(rowStart + x, z);
+						isInRun = true;
+					}
+				} else
+				{
+					isInRun = false;
+				}
+			}
+		}
+
+		private void pushIfOpen(int idx, int z)
+		{
+			if (isOpen(idx, z))
+			{
+				push(idx, z);
+			}
+		}
+
+		/**
+		 * Whether a voxel is background that has not been reached.
+		 */
+		private boolean isOpen(int idx, int z)
+		{
+			return !mask.get(idx, z) && !reached.get(idx, z);
+		}
+
+		private void push(int idx, int z)
+		{
+			if (seedCount + 2 > seeds.length)
+			{
+				final int[] grown = new int[seeds.length * 2];
+				System.arraycopy(seeds, 0, grown, 0, seedCount);
+				seeds = grown;
+			}
+			seeds[seedCount++] = idx;
+			seeds[seedCount++] = z;
+		}
+	}
+
+}
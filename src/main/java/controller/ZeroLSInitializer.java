@@ -21,6 +21,7 @@ import java.util.Map;
 
 import model.InitialParams;
 import utils.LSConstants.NSWE;
+import utils.PixelAccess;
 
 /**
  * Application to initialize a zero level set circle in a 2D slice resampled from a given data
@@ -295,15 +296,14 @@ public class ZeroLSInitializer
 		final int height = image.getHeight();
 		final byte[][] mask = new byte[width][height];
 
-		int temp;
+		final int[] samples = PixelAccess.getSamples(image, null);
 		final double intens80 = (_intens98 - _intens2) * 0.8 + _intens2;
 
-		for (int y = 0; y < height; y++)
+		for (int y = 0, idx = 0; y < height; y++)
 		{
-			for (int x = 0; x < width; x++)
+			for (int x = 0; x < width; x++, idx++)
 			{
-				temp = image.getRaster().getSample(x, y, 0);
-				if (temp > intens80)
+				if (samples[idx] > intens80)
 				{
 					mask[x][y] = 1;
 				}
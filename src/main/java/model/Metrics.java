@@ -2,13 +2,17 @@ package model;
 
 import ij.IJ;
 
+import java.awt.GraphicsEnvironment;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javax.swing.JOptionPane;
 
 import org.apache.commons.collections.CollectionUtils;
 
+import utils.BitMask2D;
 import utils.LSConstants;
 
 /**
@@ -23,12 +27,12 @@ public class Metrics
 	/**
 	 * Mask of segmentation result
 	 */
-	private List<boolean[][]> resultList;
+	private List<BitMask2D> resultList;
 
 	/**
 	 * Mask of ground truth
 	 */
-	private List<boolean[][]> groundTruthList;
+	private List<BitMask2D> groundTruthList;
 
 	// Double for metrics calculation
 	private double TP;
@@ -42,7 +46,7 @@ public class Metrics
 	 * @param resultList
 	 * @param groundTruthList
 	 */
-	public Metrics(List<boolean[][]> resultList, List<boolean[][]> groundTruthList)
+	public Metrics(List<BitMask2D> resultList, List<BitMask2D> groundTruthList)
 	{
 		this.resultList = resultList;
 		this.groundTruthList = groundTruthList;
@@ -52,6 +56,23 @@ public class Metrics
 		calculate();
 	}
 
+	/**
+	 * Counts accumulated elsewhere, e.g. slice by slice while the volume evolves. There are no
+	 * masks to {@link #calculate()} from.
+	 * 
+	 * @param TP
+	 * @param TN
+	 * @param FP
+	 * @param FN
+	 */
+	public Metrics(double TP, double TN, double FP, double FN)
+	{
+		this.TP = TP;
+		this.TN = TN;
+		this.FP = FP;
+		this.FN = FN;
+	}
+
 	/**
 	 * Single slice
 	 * 
@@ -60,10 +81,21 @@ public class Metrics
 	 */
 	public Metrics(boolean[][] result, boolean[][] groundTruth)
 	{
-		final List<boolean[][]> resultList = new ArrayList<boolean[][]>();
+		this(BitMask2D.fromArray(result), BitMask2D.fromArray(groundTruth));
+	}
+
+	/**
+	 * Single slice
+	 * 
+	 * @param result
+	 * @param groundTruth
+	 */
+	public Metrics(BitMask2D result, BitMask2D groundTruth)
+	{
+		final List<BitMask2D> resultList = new ArrayList<BitMask2D>();
 		resultList.add(result);
 
-		final List<boolean[][]> groundTruthList = new ArrayList<boolean[][]>();
+		final List<BitMask2D> groundTruthList = new ArrayList<BitMask2D>();
 		groundTruthList.add(groundTruth);
 
 		this.resultList = resultList;
@@ -77,65 +109,57 @@ public class Metrics
 	/**
 	 * Check if overflow is possible based on the number of pixels.
 	 * 
-	 * @param boolList
+	 * @param maskList
 	 */
-	private void checkOverflow(List<boolean[][]> boolList)
+	private void checkOverflow(List<BitMask2D> maskList)
 	{
-		if (CollectionUtils.isEmpty(boolList))
+		if (CollectionUtils.isEmpty(maskList))
 		{
 			throw new IllegalArgumentException(LSConstants.ERROR_RESULT_EMPTY);
 		} else
 		{
-			final boolean[][] firstResult = boolList.get(0);
+			final BitMask2D firstResult = maskList.get(0);
 
-			if (Double.MAX_VALUE / boolList.size() < firstResult.length * firstResult[0].length)
+			if (Double.MAX_VALUE / maskList.size() < firstResult.getWidth()
+					* firstResult.getHeight())
 			{
-				JOptionPane.showMessageDialog(null, LSConstants.WARN_OVERFLOW);
+				// No dialog can be shown without a display, e.g. in batch mode
+				if (GraphicsEnvironment.isHeadless())
+				{
+					IJ.log(LSConstants.WARN_OVERFLOW);
+				} else
+				{
+					JOptionPane.showMessageDialog(null, LSConstants.WARN_OVERFLOW);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Calculate TP, TN, FP and FN from result and groundTruth
+	 * Calculate TP, TN, FP and FN from result and groundTruth. The masks are compared a word of 64
+	 * pixels at a time, and volumes of more than {@link CountTask#SLICES_PER_TASK} slices are
+	 * counted in parallel on the common fork-join pool.
 	 */
 	public void calculate()
 	{
-		this.setTP(0);
-		this.setTN(0);
-		this.setFP(0);
-		this.setFN(0);
+		final CountTask task = new CountTask(resultList, groundTruthList, 0, resultList.size());
+		final long[] counts;
 
-		for (int sliceNo = 0; sliceNo < resultList.size(); sliceNo++)
+		if (resultList.size() > CountTask.SLICES_PER_TASK)
 		{
-			final boolean[][] result = resultList.get(sliceNo);
-			final boolean[][] groundTruth = groundTruthList.get(sliceNo);
-
-			for (int x = 0; x < result.length; x++)
-			{
-				for (int y = 0; y < result[0].length; y++)
-				{
-					boolean valid1 = result[x][y];
-					boolean valid2 = groundTruth[x][y];
-
-					if (valid1 && valid2)
-					{
-						TP++;
-					} else if (valid1 && !valid2)
-					{
-						FP++;
-					} else if (!valid1 && valid2)
-					{
-						FN++;
-					} else
-					{
-						TN++;
-					}
-
-				}
-			}
-
+			// The common pool is shared by the volumes of a batch instead of a pool per volume
+			counts = ForkJoinPool.commonPool().invoke(task);
+		} else
+		{
+			counts = task.compute();
 		}
 
+		this.setTP(counts[CountTask.TP]);
+		this.setFP(counts[CountTask.FP]);
+		this.setFN(counts[CountTask.FN]);
+		this.setTN(counts[CountTask.PIXELS] - counts[CountTask.TP] - counts[CountTask.FP]
+				- counts[CountTask.FN]);
+
 		IJ.log("TP = " + getTP());
 		IJ.log("TN = " + getTN());
 		IJ.log("FP = " + getFP());
@@ -213,23 +237,108 @@ public class Metrics
 		return TN / (TN + FP);
 	}
 
-	public List<boolean[][]> getResultList()
+	public List<BitMask2D> getResultList()
 	{
 		return resultList;
 	}
 
-	public void setResultList(List<boolean[][]> resultList)
+	public void setResultList(List<BitMask2D> resultList)
 	{
 		this.resultList = resultList;
 	}
 
-	public List<boolean[][]> getGroundTruthList()
+	public List<BitMask2D> getGroundTruthList()
 	{
 		return groundTruthList;
 	}
 
-	public void setGroundTruthList(List<boolean[][]> groundTruthList)
+	public void setGroundTruthList(List<BitMask2D> groundTruthList)
 	{
 		this.groundTruthList = groundTruthList;
 	}
+
+	/**
+	 * Counts TP, FP, FN and the pixels of the slices [from, to). Ranges larger than
+	 * {@link #SLICES_PER_TASK} are split in halves, which are counted in parallel and summed.
+	 */
+	static class CountTask extends RecursiveTask<long[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		static final int SLICES_PER_TASK = 8;
+
+		/** Indices of the counts. */
+		static final int TP = 0;
+		static final int FP = 1;
+		static final int FN = 2;
+		static final int PIXELS = 3;
+
+		/** The number of counts. */
+		static final int COUNTS = 4;
+
+		private final List<BitMask2D> resultList;
+
+		private final List<BitMask2D> groundTruthList;
+
+		private final int from;
+
+		private final int to;
+
+		CountTask(List<BitMask2D> resultList, List<BitMask2D> groundTruthList, int from, int to)
+		{
+			this.resultList = resultList;
+			this.groundTruthList = groundTruthList;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[] compute()
+		{
+			if (to - from > SLICES_PER_TASK)
+			{
+				final int mid = (from + to) >>> 1;
+				final CountTask left = new CountTask(resultList, groundTruthList, from, mid);
+				left.fork();
+
+				final long[] counts = new CountTask(resultList, groundTruthList, mid, to).compute();
+				final long[] leftCounts = left.join();
+				for (int k = 0; k < counts.length; k++)
+				{
+					counts[k] += leftCounts[k];
+				}
+				return counts;
+			}
+
+			final long[] counts = new long[COUNTS];
+			for (int sliceNo = from; sliceNo < to; sliceNo++)
+			{
+				count(resultList.get(sliceNo), groundTruthList.get(sliceNo), counts);
+			}
+			return counts;
+		}
+
+		/**
+		 * Add the counts of a slice.
+		 * 
+		 * @param result Mask of the segmentation result.
+		 * @param groundTruth Mask of the ground truth of the same size.
+		 * @param counts Array of {@link #COUNTS} counts to add to.
+		 */
+		static void count(BitMask2D result, BitMask2D groundTruth, long[] counts)
+		{
+			// The bits beyond the last pixel are 0 in both masks and count as TN
+			for (int i = 0; i < result.getWordCount(); i++)
+			{
+				final long a = result.getWord(i);
+				final long b = groundTruth.getWord(i);
+
+				counts[TP] += Long.bitCount(a & b);
+				counts[FP] += Long.bitCount(a & ~b);
+				counts[FN] += Long.bitCount(~a & b);
+			}
+			counts[PIXELS] += result.getWidth() * result.getHeight();
+		}
+	}
+
 }
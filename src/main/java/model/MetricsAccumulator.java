@@ -0,0 +1,119 @@
+package model;
+
+import java.util.Arrays;
+
+import utils.BitMask2D;
+
+/**
+ * Accumulates the metrics of a volume slice by slice, as each slice finishes evolving, so that
+ * phi of the slices does not have to be kept for the evaluation. The counts of every slice are
+ * kept for its Jaccard and Dice series, and their sums give the metrics of the volume. Slices
+ * can be added from several threads, e.g. both halves of the volume.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class MetricsAccumulator
+{
+
+	/** Counts of each slice as in {@link Metrics.CountTask}, or null if it is not added. */
+	private final long[][] sliceCounts;
+
+	/** Sums of the counts of the added slices. */
+	private final long[] counts = new long[Metrics.CountTask.COUNTS];
+
+	/**
+	 * Create an empty accumulator.
+	 *
+	 * @param sliceCount The number of slices of the volume.
+	 */
+	public MetricsAccumulator(int sliceCount)
+	{
+		sliceCounts = new long[sliceCount][];
+	}
+
+	/**
+	 * Add a slice. A slice that is added again replaces its counts.
+	 *
+	 * @param sliceNo Index of the slice.
+	 * @param result Mask of the segmentation result.
+	 * @param groundTruth Mask of the ground truth of the same size.
+	 */
+	public void add(int sliceNo, BitMask2D result, BitMask2D groundTruth)
+	{
+		final long[] slice = new long[Metrics.CountTask.COUNTS];
+		Metrics.CountTask.count(result, groundTruth, slice);
+
+		synchronized (this)
+		{
+			final long[] previous = sliceCounts[sliceNo];
+			for (int k = 0; k < counts.length; k++)
+			{
+				counts[k] += slice[k] - (previous == null ? 0 : previous[k]);
+			}
+			sliceCounts[sliceNo] = slice;
+		}
+	}
+
+	/**
+	 * Gets the metrics of the slices added so far.
+	 *
+	 * @return A Metrics object.
+	 */
+	public synchronized Metrics getMetrics()
+	{
+		return createMetrics(counts);
+	}
+
+	/**
+	 * Gets the Jaccard index of each slice.
+	 *
+	 * @return An array indexed by slice, which is NaN for the slices not added.
+	 */
+	public synchronized double[] getJaccardSeries()
+	{
+		final double[] series = new double[sliceCounts.length];
+		Arrays.fill(series, Double.NaN);
+
+		for (int sliceNo = 0; sliceNo < sliceCounts.length; sliceNo++)
+		{
+			if (sliceCounts[sliceNo] != null)
+			{
+				series[sliceNo] = createMetrics(sliceCounts[sliceNo]).getJaccard();
+			}
+		}
+
+		return series;
+	}
+
+	/**
+	 * Gets the Dice coefficient of each slice.
+	 *
+	 * @return An array indexed by slice, which is NaN for the slices not added.
+	 */
+	public synchronized double[] getDiceSeries()
+	{
+		final double[] series = new double[sliceCounts.length];
+		Arrays.fill(series, Double.NaN);
+
+		for (int sliceNo = 0; sliceNo < sliceCounts.length; sliceNo++)
+		{
+			if (sliceCounts[sliceNo] != null)
+			{
+				series[sliceNo] = createMetrics(sliceCounts[sliceNo]).getDice();
+			}
+		}
+
+		return series;
+	}
+
+	private static Metrics createMetrics(long[] counts)
+	{
+		final long tp = counts[Metrics.CountTask.TP];
+		final long fp = counts[Metrics.CountTask.FP];
+		final long fn = counts[Metrics.CountTask.FN];
+
+		return new Metrics(tp, counts[Metrics.CountTask.PIXELS] - tp - fp - fn, fp, fn);
+	}
+
+}
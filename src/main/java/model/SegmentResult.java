@@ -1,7 +1,6 @@
 package model;
 
 import java.awt.image.BufferedImage;
-import java.util.List;
 
 /**
  * Information about the contour evolvement
@@ -18,10 +17,17 @@ public class SegmentResult
 
 	private BufferedImage originImg;
 
-	private List<double[][]> phiList;
+	/** The number of evolved slices; their masks are kept by the skull strippers. */
+	private int sliceCount;
 
 	private BufferedImage resultImg;
 
+	/** Jaccard index of each slice, NaN for slices without ground truth. */
+	private double[] jaccardSeries;
+
+	/** Dice coefficient of each slice, NaN for slices without ground truth. */
+	private double[] diceSeries;
+
 	public Metrics getMetrics()
 	{
 		return metrics;
@@ -52,14 +58,14 @@ public class SegmentResult
 		this.originImg = originImg;
 	}
 
-	public List<double[][]> getPhiList()
+	public int getSliceCount()
 	{
-		return phiList;
+		return sliceCount;
 	}
 
-	public void setPhiList(List<double[][]> phiList)
+	public void setSliceCount(int sliceCount)
 	{
-		this.phiList = phiList;
+		this.sliceCount = sliceCount;
 	}
 
 	public BufferedImage getResultImg()
@@ -72,6 +78,26 @@ public class SegmentResult
 		this.resultImg = resultImg;
 	}
 
+	public double[] getJaccardSeries()
+	{
+		return jaccardSeries;
+	}
+
+	public void setJaccardSeries(double[] jaccardSeries)
+	{
+		this.jaccardSeries = jaccardSeries;
+	}
+
+	public double[] getDiceSeries()
+	{
+		return diceSeries;
+	}
+
+	public void setDiceSeries(double[] diceSeries)
+	{
+		this.diceSeries = diceSeries;
+	}
+
 	/**
 	 * Only for ReportMill reflection
 	 * 
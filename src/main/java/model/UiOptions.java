@@ -5,7 +5,9 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import utils.LSConstants.ContourColor;
+import utils.LSConstants.HoleFillingMethod;
 import utils.LSConstants.LevelsetType;
+import utils.LSConstants.ReinitMethod;
 
 /**
  * UI options
@@ -25,6 +27,20 @@ public class UiOptions
 
 	private boolean isHoleFilling = false;
 
+	private boolean isNarrowBand = false;
+
+	private boolean isDirectionalExtrema = false;
+
+	private boolean isTexturePrefetch = true;
+
+	private boolean isSpeculativeRetry = false;
+
+	private boolean isEarlyRejection = false;
+
+	private boolean isAdaptiveStop = false;
+
+	private boolean isIterationBudget = false;
+
 	private String outputMaskFile;
 
 	private String outputBrainOnlyFile;
@@ -33,6 +49,12 @@ public class UiOptions
 
 	private LevelsetType levelsetType = LevelsetType.Model;
 
+	private ReinitMethod reinitMethod = ReinitMethod.Sussman;
+
+	private HoleFillingMethod holeFillingMethod = HoleFillingMethod.Ray;
+
+	private double previewFps = 10;
+
 	private Map<ContourColor, Color> colorMap = new LinkedHashMap<ContourColor, Color>();
 
 	public UiOptions()
@@ -83,6 +105,26 @@ public class UiOptions
 		this.isHoleFilling = isHoleFilling;
 	}
 
+	public boolean isNarrowBand()
+	{
+		return isNarrowBand;
+	}
+
+	public void setNarrowBand(boolean isNarrowBand)
+	{
+		this.isNarrowBand = isNarrowBand;
+	}
+
+	public boolean isDirectionalExtrema()
+	{
+		return isDirectionalExtrema;
+	}
+
+	public void setDirectionalExtrema(boolean isDirectionalExtrema)
+	{
+		this.isDirectionalExtrema = isDirectionalExtrema;
+	}
+
 	public String getOutputMaskFile()
 	{
 		return outputMaskFile;
@@ -123,6 +165,86 @@ public class UiOptions
 		this.levelsetType = levelsetType;
 	}
 
+	public boolean isTexturePrefetch()
+	{
+		return isTexturePrefetch;
+	}
+
+	public void setTexturePrefetch(boolean isTexturePrefetch)
+	{
+		this.isTexturePrefetch = isTexturePrefetch;
+	}
+
+	public boolean isSpeculativeRetry()
+	{
+		return isSpeculativeRetry;
+	}
+
+	public void setSpeculativeRetry(boolean isSpeculativeRetry)
+	{
+		this.isSpeculativeRetry = isSpeculativeRetry;
+	}
+
+	public boolean isEarlyRejection()
+	{
+		return isEarlyRejection;
+	}
+
+	public void setEarlyRejection(boolean isEarlyRejection)
+	{
+		this.isEarlyRejection = isEarlyRejection;
+	}
+
+	public boolean isAdaptiveStop()
+	{
+		return isAdaptiveStop;
+	}
+
+	public void setAdaptiveStop(boolean isAdaptiveStop)
+	{
+		this.isAdaptiveStop = isAdaptiveStop;
+	}
+
+	public boolean isIterationBudget()
+	{
+		return isIterationBudget;
+	}
+
+	public void setIterationBudget(boolean isIterationBudget)
+	{
+		this.isIterationBudget = isIterationBudget;
+	}
+
+	public ReinitMethod getReinitMethod()
+	{
+		return reinitMethod;
+	}
+
+	public void setReinitMethod(ReinitMethod reinitMethod)
+	{
+		this.reinitMethod = reinitMethod;
+	}
+
+	public HoleFillingMethod getHoleFillingMethod()
+	{
+		return holeFillingMethod;
+	}
+
+	public void setHoleFillingMethod(HoleFillingMethod holeFillingMethod)
+	{
+		this.holeFillingMethod = holeFillingMethod;
+	}
+
+	public double getPreviewFps()
+	{
+		return previewFps;
+	}
+
+	public void setPreviewFps(double previewFps)
+	{
+		this.previewFps = previewFps;
+	}
+
 	public double getTextureCoefficient()
 	{
 		return textureCoefficient;
@@ -1,15 +1,57 @@
 package model;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ij.IJ;
-import loci.formats.IFormatReader;
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import utils.LSConstants;
-
+import utils.PixelAccess;
+
+/**
+ * A data volume stored contiguously in a memory-mapped temporary file, so that volumes larger
+ * than the heap can be held. The voxels are 16-bit, stored plane by plane in row-major order,
+ * and the planes are mapped in chunks of at most 2GB. Sections of any orientation can be read as
+ * zero-copy views.
+ * 
+ * Signed data are stored with an offset, which is removed by {@link #getPixelValue}.
+ * 
+ * @author Vincent Liu
+ * 
+ */
 public class Volume
 {
 
+	/** The largest number of bytes mapped at once. */
+	private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+	/** The number of columns transposed at once by {@link #reorient}. */
+	private static final int TILE = 16;
+
+	/** Color model of the 16-bit gray sections. */
+	private static final ColorModel USHORT_GRAY_MODEL = new BufferedImage(1, 1,
+			BufferedImage.TYPE_USHORT_GRAY).getColorModel();
+
 	/** Width (X) of the data volume. */
 	private int width;
 
@@ -19,37 +61,247 @@ public class Volume
 	/** Depth (Z) of the data volume. */
 	private int depth;
 
-	/** Data volume. */
-	private short[][][] _volShort = null;
+	/** Offset added to the samples to store them unsigned, 0 for unsigned data. */
+	private final int offset;
+
+	/** The number of planes in a chunk. */
+	private final int planesPerChunk;
+
+	/** Mapped chunks of the voxels, each holding planesPerChunk planes. */
+	private final ShortBuffer[] chunks;
+
+	/**
+	 * Create a zero-filled volume backed by a memory-mapped temporary file. The file is deleted
+	 * once mapped where the platform allows it, and otherwise when the JVM exits.
+	 * 
+	 * @param width Width (X) of the volume.
+	 * @param height Height (Y) of the volume.
+	 * @param depth Depth (Z) of the volume.
+	 * @param offset Offset added to the samples to store them unsigned.
+	 * @throws IOException If the temporary file cannot be created or mapped.
+	 */
+	public Volume(int width, int height, int depth, int offset) throws IOException
+	{
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+		this.offset = offset;
+
+		final long planeBytes = 2L * width * height;
+		planesPerChunk = (int) Math.max(1, Math.min(depth, MAX_CHUNK_BYTES / planeBytes));
+		chunks = new ShortBuffer[(depth + planesPerChunk - 1) / planesPerChunk];
+
+		final File file = File.createTempFile("volume", ".raw");
+		file.deleteOnExit();
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel())
+		{
+			raf.setLength(planeBytes * depth);
 
-	/** Data volume. */
-	private byte[][][] _volByte = null;
+			for (int i = 0; i < chunks.length; i++)
+			{
+				final int planes = Math.min(planesPerChunk, depth - i * planesPerChunk);
 
-	public Volume(IFormatReader iFormatReader)
+				chunks[i] =
+						channel.map(FileChannel.MapMode.READ_WRITE, i * planesPerChunk * planeBytes,
+								planes * planeBytes).order(ByteOrder.nativeOrder()).asShortBuffer();
+			}
+		}
+
+		// The mappings stay valid after the file is closed and deleted
+		file.delete();
+	}
+
+	/**
+	 * Store a plane.
+	 * 
+	 * @param z Index of the plane.
+	 * @param plane The stored values of the plane in row-major order.
+	 */
+	public void setPlane(int z, short[] plane)
 	{
+		final ShortBuffer buffer = chunks[z / planesPerChunk].duplicate();
+		buffer.position((z % planesPerChunk) * width * height);
+		buffer.put(plane, 0, width * height);
+	}
 
-		width = iFormatReader.getSizeX();
-		height = iFormatReader.getSizeY();
-		depth = iFormatReader.getSizeZ();
+	/**
+	 * Read a plane.
+	 * 
+	 * @param z Index of the plane.
+	 * @param plane Array to receive the stored values of the plane in row-major order.
+	 * @return The given array.
+	 */
+	public short[] getPlane(int z, short[] plane)
+	{
+		final ShortBuffer buffer = chunks[z / planesPerChunk].duplicate();
+		buffer.position((z % planesPerChunk) * width * height);
+		buffer.get(plane, 0, width * height);
+		return plane;
+	}
 
+	/**
+	 * Store a segment of a plane.
+	 */
+	private void putSegment(int z, int start, short[] values, int from, int length)
+	{
+		final ShortBuffer buffer = chunks[z / planesPerChunk].duplicate();
+		buffer.position((z % planesPerChunk) * width * height + start);
+		buffer.put(values, from, length);
 	}
 
 	/**
-	 * Gets the data volume.
+	 * Create a volume whose axial sections are the sections of this volume in the given
+	 * orientation, so that they can be read contiguously. The axial planes are transposed
+	 * concurrently, each in tiles of columns that fit in the cache, and every plane writes a
+	 * distinct row of each section.
 	 * 
-	 * @return The data volume.
+	 * @param orient Orientation of the sections: 0 is axial, 1 is coronal and 2 is sagittal.
+	 * @return A new Volume object, or this volume if the orientation is axial.
+	 * @throws IOException If the new volume cannot be mapped.
 	 */
-	public Object getDataVolume()
+	public Volume reorient(final int orient) throws IOException
 	{
-		if (_volByte != null)
+		if (orient == 0)
 		{
-			return _volByte;
-		} else
+			return this;
+		}
+
+		final Volume result =
+				new Volume(getWidth(orient), getHeight(orient), getDepth(orient), offset);
+
+		final ExecutorService executor =
+				Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+		try
+		{
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+			for (int z = 0; z < depth; z++)
+			{
+				final int plane = z;
+
+				futures.add(executor.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						transposePlane(plane, orient, result);
+					}
+				}));
+			}
+
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+
+		} catch (InterruptedException | ExecutionException e)
+		{
+			throw new IOException("Reorientation fails", e);
+
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Write an axial plane into row z of every section of the reoriented volume.
+	 */
+	private void transposePlane(int z, int orient, Volume result)
+	{
+		final short[] plane = getPlane(z, new short[width * height]);
+
+		if (orient == 1)
+		{
+			// Row y of the plane is row z of coronal section y
+			for (int y = 0; y < height; y++)
+			{
+				result.putSegment(y, z * width, plane, y * width, width);
+			}
+			return;
+		}
+
+		// Column x of the plane is row z of sagittal section x
+		final short[] tile = new short[TILE * height];
+
+		for (int x0 = 0; x0 < width; x0 += TILE)
 		{
-			return _volShort;
+			final int columns = Math.min(TILE, width - x0);
+
+			for (int y = 0; y < height; y++)
+			{
+				for (int i = 0, idx = y * width + x0; i < columns; i++, idx++)
+				{
+					tile[i * height + y] = plane[idx];
+				}
+			}
+
+			for (int i = 0; i < columns; i++)
+			{
+				result.putSegment(x0 + i, z * height, tile, i * height, height);
+			}
 		}
 	}
 
+	/**
+	 * Create a stack to display the axial planes of the volume, e.g. the sections of a
+	 * reoriented volume. The stack is virtual and reads a plane of the mapped volume whenever a
+	 * slice is shown.
+	 * 
+	 * @param title Title of the stack.
+	 * @return An ImagePlus object.
+	 */
+	public ImagePlus createImagePlus(String title)
+	{
+		final VirtualStack stack = new VirtualStack(width, height, null, null)
+		{
+			@Override
+			public ImageProcessor getProcessor(int n)
+			{
+				return new ShortProcessor(width, height, getPlane(n - 1, new short[width * height]),
+						null);
+			}
+
+			@Override
+			public int getSize()
+			{
+				return depth;
+			}
+
+			@Override
+			public String getSliceLabel(int n)
+			{
+				return null;
+			}
+		};
+
+		return new ImagePlus(title, stack);
+	}
+
+	/**
+	 * Gets the offset added to the samples to store them unsigned.
+	 * 
+	 * @return 0 for unsigned data.
+	 */
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Gets the stored value of a voxel, unsigned.
+	 */
+	private int getStored(int x, int y, int z)
+	{
+		return chunks[z / planesPerChunk].get((z % planesPerChunk) * width * height + y * width
+				+ x) & 0xffff;
+	}
+
 	public int getDepth(int orient)
 	{
 		if (orient >= 3)
@@ -73,36 +325,30 @@ public class Volume
 
 	public BufferedImage createGrayImage(BufferedImage buffImage, int imageType)
 	{
-		final int width = buffImage.getWidth();
-		final int height = buffImage.getHeight();
-
-		final BufferedImage resultImg = new BufferedImage(width, height, imageType);
+		final BufferedImage resultImg =
+				new BufferedImage(buffImage.getWidth(), buffImage.getHeight(), imageType);
 
-		WritableRaster raster;
-		raster = resultImg.getRaster();
-
-		for (int y = 0; y < height; y++)
+		final int mask;
+		if (imageType == BufferedImage.TYPE_BYTE_GRAY)
 		{
-			for (int x = 0; x < width; x++)
-			{
-				// raster.setSample(x, y, 0, getPixelValue(x, y, index,
-				// orient));
+			mask = 0xff;
 
-				if (imageType == BufferedImage.TYPE_BYTE_GRAY)
-				{
-					raster.setSample(x, y, 0, buffImage.getRaster().getSample(x, y, 0) & 0xff);
-
-				} else if (imageType == BufferedImage.TYPE_USHORT_GRAY)
-				{
-					raster.setSample(x, y, 0, buffImage.getRaster().getSample(x, y, 0) & 0xffff);
+		} else if (imageType == BufferedImage.TYPE_USHORT_GRAY)
+		{
+			mask = 0xffff;
 
-				} else
-				{
-					IJ.error(LSConstants.ERROR_UNACCEPTABLE_IMAGE_TYPE + imageType);
-				}
+		} else
+		{
+			IJ.error(LSConstants.ERROR_UNACCEPTABLE_IMAGE_TYPE + imageType);
+			return resultImg;
+		}
 
-			}
+		final int[] samples = PixelAccess.getSamples(buffImage, null);
+		for (int idx = 0; idx < samples.length; idx++)
+		{
+			samples[idx] &= mask;
 		}
+		PixelAccess.setSamples(resultImg, samples);
 
 		return resultImg;
 	}
@@ -116,15 +362,9 @@ public class Volume
 		int width = getWidth(orient);
 		int height = getHeight(orient);
 		BufferedImage image = new BufferedImage(width, height, IMAGE_TYPE);
-		WritableRaster raster;
-		raster = image.getRaster();
-		for (int y = 0; y < height; y++)
-		{
-			for (int x = 0; x < width; x++)
-			{
-				raster.setSample(x, y, 0, getPixelValue(x, y, index, orient));
-			}
-		}
+		final int[] samples = new int[width * height];
+		readSection(index, orient, samples);
+		PixelAccess.setSamples(image, samples);
 		return image;
 	}
 
@@ -203,40 +443,167 @@ public class Volume
 	 */
 	public int getPixelValue(int x, int y, int index, int orient)
 	{
-		int pixel = -1;
+		// Axial
+		if (orient == 0)
+			return getStored(x, y, index) - offset;
+
+		// Coronal
+		else if (orient == 1)
+			return getStored(x, index, y) - offset;
+
+		// Sagittal
+		else
+			return getStored(index, x, y) - offset;
+	}
+
+	/**
+	 * Create a read-only 16-bit gray view of a section. The view reads the mapped voxels on
+	 * access, so no pixel is copied. The samples must lie within [0, 65535].
+	 * 
+	 * @param index The index of the section in the data volume.
+	 * @param orient The orientation of the section.
+	 * @return A BufferedImage object.
+	 */
+	public BufferedImage createSectionView(final int index, final int orient)
+	{
+		final int sectionWidth = getWidth(orient);
+		final int sectionHeight = getHeight(orient);
+
+		final DataBuffer dataBuffer =
+				new PixelAccess.BulkDataBuffer(DataBuffer.TYPE_USHORT, sectionWidth * sectionHeight)
+				{
+					@Override
+					public int getElem(int bank, int i)
+					{
+						return getPixelValue(i % sectionWidth, i / sectionWidth, index, orient);
+					}
+
+					@Override
+					public void readSamples(int[] samples)
+					{
+						readSection(index, orient, samples);
+					}
+
+					@Override
+					public void setElem(int bank, int i, int val)
+					{
+						throw new UnsupportedOperationException("Section views are read-only");
+					}
+				};
+
+		final WritableRaster raster =
+				Raster.createWritableRaster(new ComponentSampleModel(DataBuffer.TYPE_USHORT,
+						sectionWidth, sectionHeight, 1, sectionWidth, new int[] {0}), dataBuffer,
+						null);
+
+		return new BufferedImage(USHORT_GRAY_MODEL, raster, false, null);
+	}
+
+	/**
+	 * Read the samples of a section in row-major order, a row of the underlying buffer at a time.
+	 */
+	private void readSection(int index, int orient, int[] samples)
+	{
+		final int planeSize = width * height;
+
+		// Axial
+		if (orient == 0)
+		{
+			final ShortBuffer buffer = chunks[index / planesPerChunk];
+			final int start = (index % planesPerChunk) * planeSize;
+			for (int idx = 0; idx < planeSize; idx++)
+			{
+				samples[idx] = (buffer.get(start + idx) & 0xffff) - offset;
+			}
+		}
 
-		if (getDataVolume() instanceof byte[][][])
+		// Coronal, rows of the section are rows of the planes
+		else if (orient == 1)
 		{
-			byte[][][] array = (byte[][][]) getDataVolume();
+			for (int z = 0, idx = 0; z < depth; z++)
+			{
+				final ShortBuffer buffer = chunks[z / planesPerChunk];
+				final int start = (z % planesPerChunk) * planeSize + index * width;
+				for (int src = start; src < start + width; src++, idx++)
+				{
+					samples[idx] = (buffer.get(src) & 0xffff) - offset;
+				}
+			}
+		}
+
+		// Sagittal, rows of the section are columns of the planes
+		else
+		{
+			for (int z = 0, idx = 0; z < depth; z++)
+			{
+				final ShortBuffer buffer = chunks[z / planesPerChunk];
+				final int start = (z % planesPerChunk) * planeSize + index;
+				for (int src = start; src < start + planeSize; src += width, idx++)
+				{
+					samples[idx] = (buffer.get(src) & 0xffff) - offset;
+				}
+			}
+		}
+	}
 
-			// Axial
-			if (orient == 0)
-				pixel = array[index][x][y] & 0xff;
+	/**
+	 * Create the image of a slice to evolve. As {@link utils.LSUtil#checkAndRescaleRange}, the
+	 * slice is rescaled if it contains samples out of the given range, in which case a new buffer
+	 * is allocated; otherwise the image is a read-only view of the mapped voxels.
+	 * 
+	 * @param z Index of the axial section.
+	 * @param lowerBound The lowest acceptable sample.
+	 * @param upperBound The highest acceptable sample.
+	 * @return A 16-bit gray BufferedImage object.
+	 */
+	public BufferedImage createSliceImage(int z, int lowerBound, int upperBound)
+	{
+		final short[] plane = getPlane(z, new short[width * height]);
 
-			// Coronal
-			else if (orient == 1)
-				pixel = array[y][x][index] & 0xff;
+		// Same bounds as LSUtil.rescaleImage, which starts both at 0
+		int imageMin = 0;
+		int imageMax = 0;
+		boolean isWithinRange = true;
 
-			// Sagittal
-			else
-				pixel = array[y][index][x] & 0xff;
-		} else
+		int value;
+		for (int idx = 0; idx < plane.length; idx++)
 		{
-			short[][][] array = (short[][][]) getDataVolume();
+			value = (plane[idx] & 0xffff) - offset;
+
+			if (value < imageMin)
+			{
+				imageMin = value;
+			}
+			if (value > imageMax)
+			{
+				imageMax = value;
+			}
+			if (value < lowerBound || value > upperBound)
+			{
+				isWithinRange = false;
+			}
+		}
 
-			// Axial
-			if (orient == 0)
-				pixel = array[index][x][y] & 0xffff;
+		if (isWithinRange)
+		{
+			return createSectionView(z, 0);
+		}
 
-			// Coronal
-			else if (orient == 1)
-				pixel = array[y][x][index] & 0xffff;
+		// Rescale into the plane, which is a copy
+		for (int idx = 0; idx < plane.length; idx++)
+		{
+			value = (plane[idx] & 0xffff) - offset;
 
-			// Sagittal
-			else
-				pixel = array[y][index][x] & 0xffff;
+			plane[idx] =
+					(short) (int) (lowerBound + (double) (value - imageMin) / (imageMax - imageMin)
+							* (upperBound - lowerBound));
 		}
-		return pixel;
+
+		final WritableRaster raster =
+				Raster.createInterleavedRaster(new DataBufferUShort(plane, plane.length),
+						width, height, width, 1, new int[] {0}, null);
+
+		return new BufferedImage(USHORT_GRAY_MODEL, raster, false, null);
 	}
 
 }
@@ -0,0 +1,230 @@
+package model;
+
+import ij.ImagePlus;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Map;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.MetadataTools;
+
+/**
+ * A volume decoded once from its file. The planes are decoded vertically flipped into a
+ * memory-mapped {@link Volume}, which is shared by the display stack and the slices to evolve, so
+ * the file is opened only once per run and the voxels are kept off the heap.
+ *
+ * Signed data follow the ImageJ convention and are stored with an offset, i.e. +32768 for 16-bit
+ * and +128 for 8-bit data, so the display stack shows them in order.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class VolumeSource
+{
+
+	private final String filePath;
+
+	/** Width (X) of the volume. */
+	private final int width;
+
+	/** Height (Y) of the volume. */
+	private final int height;
+
+	/** Depth (Z) of the volume. */
+	private final int depth;
+
+	private final int bitsPerPixel;
+
+	private final String format;
+
+	private final Map<String, Object> globalMetadata;
+
+	/** Offset added to the samples to store them unsigned, 0 for unsigned data. */
+	private final int offset;
+
+	/** The planes in row-major order, vertically flipped. */
+	private final Volume volume;
+
+	/**
+	 * Decode the volume of the file.
+	 *
+	 * @param filePath Path of the file.
+	 * @throws FormatException If the file cannot be parsed or has a pixel type other than 8-bit or
+	 *         16-bit integers.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public VolumeSource(String filePath) throws FormatException, IOException
+	{
+		this.filePath = filePath;
+
+		try (IFormatReader reader = new ImageReader())
+		{
+			reader.setMetadataStore(MetadataTools.createOMEXMLMetadata());
+			reader.setId(filePath);
+
+			width = reader.getSizeX();
+			height = reader.getSizeY();
+			depth = reader.getSizeZ();
+			bitsPerPixel = reader.getBitsPerPixel();
+			format = reader.getFormat();
+			globalMetadata = new Hashtable<String, Object>(reader.getGlobalMetadata());
+
+			final int pixelType = reader.getPixelType();
+			offset = getOffset(pixelType);
+
+			final boolean isLittleEndian = reader.isLittleEndian();
+
+			volume = new Volume(width, height, depth, offset);
+
+			byte[] bytes = null;
+			final short[] plane = new short[width * height];
+			for (int z = 0; z < depth; z++)
+			{
+				bytes = reader.openBytes(z, bytes);
+
+				decodePlane(bytes, width, height, pixelType, isLittleEndian, plane);
+				volume.setPlane(z, plane);
+			}
+		}
+	}
+
+	/**
+	 * Wrap a volume that has been decoded already, e.g. one built in memory.
+	 *
+	 * @param filePath Path identifying the volume.
+	 * @param volume The planes in row-major order, vertically flipped.
+	 * @param format Format of the volume.
+	 * @param bitsPerPixel Bits per pixel of the samples.
+	 * @param globalMetadata Metadata of the volume, e.g. the steps of its axes.
+	 */
+	public VolumeSource(String filePath, Volume volume, String format, int bitsPerPixel,
+			Map<String, Object> globalMetadata)
+	{
+		this.filePath = filePath;
+		this.volume = volume;
+		this.format = format;
+		this.bitsPerPixel = bitsPerPixel;
+		this.globalMetadata = globalMetadata;
+
+		width = volume.getWidth(0);
+		height = volume.getHeight(0);
+		depth = volume.getDepth(0);
+		offset = volume.getOffset();
+	}
+
+	/**
+	 * Offset of the samples of the pixel type.
+	 */
+	private static int getOffset(int pixelType) throws FormatException
+	{
+		switch (pixelType)
+		{
+		case FormatTools.UINT8:
+		case FormatTools.UINT16:
+			return 0;
+		case FormatTools.INT8:
+			return 128;
+		case FormatTools.INT16:
+			return 32768;
+		default:
+			throw new FormatException("Unsupported pixel type: " + pixelType);
+		}
+	}
+
+	/**
+	 * Decode the bytes of a plane into the given array, flipped vertically and with the offset of
+	 * signed data added.
+	 */
+	static void decodePlane(byte[] bytes, int width, int height, int pixelType,
+			boolean isLittleEndian, short[] plane) throws FormatException
+	{
+		final int offset = getOffset(pixelType);
+		final boolean isByte = pixelType == FormatTools.UINT8 || pixelType == FormatTools.INT8;
+
+		int src = 0;
+		int value;
+		for (int y = 0; y < height; y++)
+		{
+			for (int idx = (height - 1 - y) * width, end = idx + width; idx < end; idx++)
+			{
+				if (isByte)
+				{
+					value = pixelType == FormatTools.INT8 ? bytes[src++] : bytes[src++] & 0xff;
+				} else
+				{
+					final int first = bytes[src++] & 0xff;
+					final int second = bytes[src++] & 0xff;
+					value = isLittleEndian ? (second << 8) | first : (first << 8) | second;
+
+					if (pixelType == FormatTools.INT16)
+					{
+						value = (short) value;
+					}
+				}
+
+				plane[idx] = (short) (value + offset);
+			}
+		}
+	}
+
+	public String getFilePath()
+	{
+		return filePath;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	public int getBitsPerPixel()
+	{
+		return bitsPerPixel;
+	}
+
+	public String getFormat()
+	{
+		return format;
+	}
+
+	public Map<String, Object> getGlobalMetadata()
+	{
+		return globalMetadata;
+	}
+
+	/**
+	 * Gets the decoded volume.
+	 *
+	 * @return A Volume object.
+	 */
+	public Volume getVolume()
+	{
+		return volume;
+	}
+
+	/**
+	 * Create a stack to display the volume. The stack is virtual and reads a plane of the mapped
+	 * volume whenever a slice is shown.
+	 *
+	 * @return An ImagePlus object.
+	 */
+	public ImagePlus createImagePlus()
+	{
+		return volume.createImagePlus(filePath);
+	}
+
+}
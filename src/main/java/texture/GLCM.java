@@ -2,14 +2,19 @@ package texture;
 
 import java.awt.Point;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import utils.Field2D;
+
 /**
- * Gray Level Co-occurrence Matrix
+ * Gray Level Co-occurrence Matrix. The matrix of each window is reduced to its features as the
+ * window slides, so only the feature grids are kept. The matrices themselves are only retained
+ * on request for debugging, since they take level^2 doubles per pixel.
  * 
  * @author Vincent Liu
  * 
@@ -21,9 +26,28 @@ public class GLCM extends Texture
 
 	private GLCMFeatures glcmFeatures;
 
+	/** Normalized matrix of each window, only kept on request. */
 	private Map<Point, double[][]> glcmMap;
 
 	public GLCM(double[][] img, int level, int xDis, int yDis, int min, int max, int winSize)
+	{
+		this(img, level, xDis, yDis, min, max, winSize, false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param img
+	 * @param level
+	 * @param xDis
+	 * @param yDis
+	 * @param min
+	 * @param max
+	 * @param winSize
+	 * @param isMatrixKept Whether to keep the matrix of each window for {@link #getGLCMMap()}.
+	 */
+	public GLCM(double[][] img, int level, int xDis, int yDis, int min, int max, int winSize,
+			boolean isMatrixKept)
 	{
 		super(img);
 
@@ -34,8 +58,9 @@ public class GLCM extends Texture
 
 		final int[][] scaled = doQuantization(img, level, min, max);
 
-		glcmMap = calculateGLCM(scaled, level, xDis, yDis, winSize);
-		glcmFeatures = new GLCMFeatures(glcmMap, width, height);
+		glcmMap = isMatrixKept ? new HashMap<Point, double[][]>() : null;
+
+		calculateGLCM(scaled, level, xDis, yDis, winSize);
 
 	}
 
@@ -45,46 +70,191 @@ public class GLCM extends Texture
 	}
 
 	/**
-	 * Calculate GLCM based on scaled image
+	 * Calculate GLCM based on scaled image. The co-occurrence counts of the window are updated
+	 * incrementally as the window slides along a row: the pairs anchored at the leaving column are
+	 * removed and those anchored at the entering column are added, so each step costs O(winSize)
+	 * instead of O(winSize^2). The features are derived from running sums of the counts.
 	 * 
 	 * @param scaled
 	 * @param level
 	 * @param xDis
 	 * @param yDis
 	 * @param winSize
-	 * @return
 	 */
-	private Map<Point, double[][]> calculateGLCM(int[][] scaled, int level, int xDis, int yDis,
+	private void calculateGLCM(int[][] scaled, int level, int xDis, int yDis,
 			int winSize)
 	{
 		final int height = scaled.length;
 		final int width = scaled[0].length;
 
-		final Map<Point, double[][]> glcmMap = new HashMap<Point, double[][]>();
+		final Field2D contrast = new Field2D(width, height);
+		final Field2D homogenity = new Field2D(width, height);
+		final Field2D entropy = new Field2D(width, height);
+		final Field2D energy = new Field2D(width, height);
+
+		final double[] contrastData = contrast.getData();
+		final double[] homogenityData = homogenity.getData();
+		final double[] entropyData = entropy.getData();
+		final double[] energyData = energy.getData();
+
+		// Offsets within the window of the pixels whose displaced pixel is also in the window
+		final int xLo = Math.max(0, -xDis);
+		final int xHi = winSize - 1 - Math.max(0, xDis);
+		final int yLo = Math.max(0, -yDis);
+		final int yHi = winSize - 1 - Math.max(0, yDis);
+
+		// Number of pairs in a window, the same for every window
+		final int sum = Math.max(xHi - xLo + 1, 0) * Math.max(yHi - yLo + 1, 0);
+
+		final SlidingCounts counts = new SlidingCounts(level, sum);
 
 		for (int y = 0; y < height - level; y++)
 		{
-			for (int x = 0; x < width - level; x++)
+			counts.clear();
+
+			for (int ay = y + yLo; ay <= y + yHi; ay++)
 			{
-				int[][] window = new int[winSize][winSize];
+				for (int ax = xLo; ax <= xHi; ax++)
+				{
+					counts.add(scaled[ay][ax], scaled[ay + yDis][ax + xDis]);
+				}
+			}
 
-				for (int dy = 0; dy < winSize; dy++)
+			for (int x = 0; x < width - level; x++)
+			{
+				if (x > 0)
 				{
-					for (int dx = 0; dx < winSize; dx++)
+					// Slide the window by one column
+					final int leaving = x - 1 + xLo;
+					final int entering = x + xHi;
+
+					for (int ay = y + yLo; ay <= y + yHi; ay++)
 					{
-						window[dy][dx] = scaled[y + dy][x + dx];
+						counts.remove(scaled[ay][leaving], scaled[ay + yDis][leaving + xDis]);
+						counts.add(scaled[ay][entering], scaled[ay + yDis][entering + xDis]);
 					}
 				}
 
-				double[][] glcm = calculateSingleGLCM(window, level, xDis, yDis);
+				final int idx = y * width + x;
+				contrastData[idx] = counts.getContrast();
+				homogenityData[idx] = counts.getHomogenity();
+				entropyData[idx] = counts.getEntropy();
+				energyData[idx] = counts.getEnergy();
+
+				if (glcmMap != null)
+				{
+					glcmMap.put(new Point(x, y), counts.normalize());
+				}
+			}
+		}
 
-				glcmMap.put(new Point(x, y), glcm);
+		glcmFeatures = new GLCMFeatures(contrast, homogenity, entropy, energy);
 
+	}
+
+	/**
+	 * Integer co-occurrence counts of a window with running sums of the features. Energy and
+	 * entropy follow from sum(c^2) and sum(c ln c) of the counts c, with 0 ln 0 taken as 0.
+	 */
+	private static class SlidingCounts
+	{
+		private final int level;
+
+		private final int sum;
+
+		private final int[] counts;
+
+		/** c ln c of the possible counts. */
+		private final double[] cLogC;
+
+		private long sumSquares;
+
+		private double sumCLogC;
+
+		private long sumContrast;
+
+		private double sumHomogenity;
+
+		SlidingCounts(int level, int sum)
+		{
+			this.level = level;
+			this.sum = sum;
+
+			counts = new int[level * level];
+
+			cLogC = new double[sum + 1];
+			for (int c = 1; c <= sum; c++)
+			{
+				cLogC[c] = c * Math.log(c);
 			}
 		}
 
-		return glcmMap;
+		void clear()
+		{
+			Arrays.fill(counts, 0);
+			sumSquares = 0;
+			sumCLogC = 0;
+			sumContrast = 0;
+			sumHomogenity = 0;
+		}
+
+		void add(int i, int j)
+		{
+			final int c = counts[i * level + j]++;
 
+			sumSquares += 2 * c + 1;
+			sumCLogC += cLogC[c + 1] - cLogC[c];
+			sumContrast += (i - j) * (i - j);
+			sumHomogenity += 1d / (1 + (i - j) * (i - j));
+		}
+
+		void remove(int i, int j)
+		{
+			final int c = counts[i * level + j]--;
+
+			sumSquares -= 2 * c - 1;
+			sumCLogC -= cLogC[c] - cLogC[c - 1];
+			sumContrast -= (i - j) * (i - j);
+			sumHomogenity -= 1d / (1 + (i - j) * (i - j));
+		}
+
+		double getEnergy()
+		{
+			return (double) sumSquares / ((double) sum * sum);
+		}
+
+		double getEntropy()
+		{
+			return Math.log(sum) - sumCLogC / sum;
+		}
+
+		double getContrast()
+		{
+			return (double) sumContrast / sum;
+		}
+
+		double getHomogenity()
+		{
+			return sumHomogenity / sum;
+		}
+
+		/**
+		 * The normalized co-occurrence matrix of the window.
+		 */
+		double[][] normalize()
+		{
+			final double[][] glcm = new double[level][level];
+
+			for (int i = 0; i < level; i++)
+			{
+				for (int j = 0; j < level; j++)
+				{
+					glcm[i][j] = (double) counts[i * level + j] / sum;
+				}
+			}
+
+			return glcm;
+		}
 	}
 
 	/**
@@ -131,77 +301,6 @@ public class GLCM extends Texture
 		return scaled;
 	}
 
-	/**
-	 * Calculate GLCM
-	 * 
-	 * @param scaled
-	 * @param xDis
-	 * @param yDis
-	 */
-	private double[][] calculateSingleGLCM(int[][] window, int level, int xDis, int yDis)
-	{
-
-		final int height = window.length;
-		final int width = window[0].length;
-
-		final double[][] glcm = new double[level][level];
-
-		int sum = 0;
-
-		for (int y = 0; y < height; y++)
-		{
-			for (int x = 0; x < width; x++)
-			{
-				if (withinImg(x + xDis, y + yDis, width, height))
-				{
-					glcm[window[y][x]][window[y + yDis][x + xDis]]++;
-					sum++;
-				}
-			}
-		}
-
-		// Normalization: divided by the frequency
-		for (int y = 0; y < glcm.length; y++)
-		{
-			for (int x = 0; x < glcm[0].length; x++)
-			{
-				glcm[y][x] /= sum;
-			}
-		}
-
-		return glcm;
-
-	}
-
-	/**
-	 * Check if (x,y) is out of bound
-	 * 
-	 * @param x
-	 * @param y
-	 * @param xBound
-	 * @param yBound
-	 * @return
-	 */
-	private boolean withinImg(int x, int y, int xBound, int yBound)
-	{
-		boolean isWithin = true;
-
-		if (x < 0 || x >= xBound)
-		{
-			isWithin = false;
-			LOGGER.debug("x out of bound: {}", x);
-		}
-
-		if (y < 0 || y >= yBound)
-		{
-			isWithin = false;
-			LOGGER.debug("y out of bound: {}", y);
-		}
-
-		return isWithin;
-
-	}
-
 	/**
 	 * Accessor of GLCM features
 	 * 
@@ -215,7 +314,7 @@ public class GLCM extends Texture
 	/**
 	 * Accessor of GLCM matrices
 	 * 
-	 * @return
+	 * @return The matrix of each window, or null if the matrices are not kept.
 	 */
 	public Map<Point, double[][]> getGLCMMap()
 	{
@@ -1,127 +1,72 @@
 package texture;
 
-import ij.IJ;
-
-import java.awt.Point;
-import java.util.Date;
-import java.util.Map;
+import utils.Field2D;
 
 /**
- * Features of Gray Level Co-ocurrence Matrix
+ * Features of Gray Level Co-ocurrence Matrix, one row-major grid per feature.
  * 
  * @author Vincent Liu
  * 
  */
 public class GLCMFeatures
 {
-	private double[][] contrast;
-	private double[][] homogenity;
-	private double[][] entropy;
-	private double[][] energy;
-
-	private int height;
-	private int width;
-
-	public GLCMFeatures(Map<Point, double[][]> glcmMap, int width, int height)
-	{
-		this.height = height;
-		this.width = width;
-
-		calculateFeatures(glcmMap);
-	}
+	private Field2D contrast;
+	private Field2D homogenity;
+	private Field2D entropy;
+	private Field2D energy;
 
 	/**
-	 * Calculate features based on GLCM map
+	 * Features calculated by the sliding window of {@link GLCM}.
 	 * 
-	 * @param glcmMap
+	 * @param contrast
+	 * @param homogenity
+	 * @param entropy
+	 * @param energy
 	 */
-	private void calculateFeatures(Map<Point, double[][]> glcmMap)
+	public GLCMFeatures(Field2D contrast, Field2D homogenity, Field2D entropy, Field2D energy)
 	{
-
-		Date tic = new Date();
-
-		final double[][] contrast = new double[height][width];
-		final double[][] homogenity = new double[height][width];
-		final double[][] entropy = new double[height][width];
-		final double[][] energy = new double[height][width];
-
-		for (Map.Entry<Point, double[][]> glcm : glcmMap.entrySet())
-		{
-			double entropyTemp = 0;
-			double energyTemp = 0;
-			double contrastTemp = 0;
-			double homogenityTemp = 0;
-
-			double[][] glcmMat = glcm.getValue();
-			Point loc = glcm.getKey();
-			int y = (int) loc.getY();
-			int x = (int) loc.getX();
-
-			for (int i = 0; i < glcmMat.length; i++)
-			{
-				for (int j = 0; j < glcmMat[0].length; j++)
-				{
-					entropyTemp -= glcmMat[i][j] * Math.log(glcmMat[i][j]);
-					energyTemp += glcmMat[i][j] * glcmMat[i][j];
-					// contrastTemp += (i - j) * (i - j) * glcmMat[i][j];
-					// homogenityTemp += glcmMat[i][j] / (1 + (i - j) * (i - j));
-				}
-			}
-
-			contrast[y][x] = contrastTemp;
-			homogenity[y][x] = homogenityTemp;
-			entropy[y][x] = entropyTemp;
-			energy[y][x] = energyTemp;
-
-		}
-
-		Date tac = new Date();
-
-		IJ.log("Exec. Time = " + (tac.getTime() - tic.getTime()));
-
 		setContrast(contrast);
-		setEnergy(energy);
-		setEntropy(entropy);
 		setHomogenity(homogenity);
-
+		setEntropy(entropy);
+		setEnergy(energy);
 	}
 
-	public double[][] getContrast()
+	public Field2D getContrast()
 	{
 		return contrast;
 	}
 
-	public void setContrast(double[][] contrast)
+	public void setContrast(Field2D contrast)
 	{
 		this.contrast = contrast;
 	}
 
-	public double[][] getHomogenity()
+	public Field2D getHomogenity()
 	{
 		return homogenity;
 	}
 
-	public void setHomogenity(double[][] homogenity)
+	public void setHomogenity(Field2D homogenity)
 	{
 		this.homogenity = homogenity;
 	}
 
-	public double[][] getEntropy()
+	public Field2D getEntropy()
 	{
 		return entropy;
 	}
 
-	public void setEntropy(double[][] entropy)
+	public void setEntropy(Field2D entropy)
 	{
 		this.entropy = entropy;
 	}
 
-	public double[][] getEnergy()
+	public Field2D getEnergy()
 	{
 		return energy;
 	}
 
-	public void setEnergy(double[][] energy)
+	public void setEnergy(Field2D energy)
 	{
 		this.energy = energy;
 	}
@@ -2,6 +2,8 @@ package texture;
 
 import java.awt.image.BufferedImage;
 
+import utils.PixelAccess;
+
 public class Texture
 {
 	protected int height = 0;
@@ -11,7 +13,7 @@ public class Texture
 	/**
 	 * Original image
 	 */
-	protected static double[][] img;
+	protected double[][] img;
 
 	/**
 	 * First derivative of original image along x direction
@@ -88,12 +90,13 @@ public class Texture
 	{
 
 		final double[][] doubleImg = new double[img.getHeight()][img.getWidth()];
+		final int[] samples = PixelAccess.getSamples(img, null);
 
-		for (int y = 0; y < doubleImg.length; y++)
+		for (int y = 0, idx = 0; y < doubleImg.length; y++)
 		{
-			for (int x = 0; x < doubleImg[0].length; x++)
+			for (int x = 0; x < doubleImg[0].length; x++, idx++)
 			{
-				doubleImg[y][x] = img.getRaster().getSample(x, y, 0);
+				doubleImg[y][x] = samples[idx];
 			}
 		}
 
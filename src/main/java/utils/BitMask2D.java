@@ -0,0 +1,327 @@
+package utils;
+
+/**
+ * A binary mask packed into bits, 64 pixels per long. The pixels are stored in row-major order as
+ * in {@link Field2D}, i.e. pixel (x, y) is bit y * width + x, and the bits beyond width * height
+ * of the last word are 0. A mask takes a 64th of a double array and an 8th of a boolean or byte
+ * array, and masks of the same size can be compared a word at a time.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class BitMask2D
+{
+
+	private final int width;
+
+	private final int height;
+
+	private final long[] words;
+
+	/**
+	 * Create an empty mask.
+	 *
+	 * @param width Width (X) of the mask.
+	 * @param height Height (Y) of the mask.
+	 */
+	public BitMask2D(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+
+		words = new long[(width * height + 63) >>> 6];
+	}
+
+	/**
+	 * Create a mask from a level set grid.
+	 *
+	 * @param phi A Field2D object.
+	 * @param threshold Elements not less than the threshold are set.
+	 * @return A new mask.
+	 */
+	public static BitMask2D fromField(Field2D phi, double threshold)
+	{
+		final BitMask2D mask = new BitMask2D(phi.getWidth(), phi.getHeight());
+		final double[] data = phi.getData();
+
+		// Assemble each word in a register instead of setting the pixels one by one
+		for (int i = 0, idx = 0; i < mask.words.length; i++)
+		{
+			long word = 0;
+			for (int end = Math.min(idx + 64, data.length), bit = 0; idx < end; idx++, bit++)
+			{
+				if (data[idx] >= threshold)
+				{
+					word |= 1L << bit;
+				}
+			}
+			mask.words[i] = word;
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Create a mask from samples of an image in row-major order, e.g. as given by
+	 * {@link PixelAccess#getSamples}.
+	 *
+	 * @param samples The samples of at least width * height.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param threshold Samples not less than the threshold are set.
+	 * @return A new mask.
+	 */
+	public static BitMask2D fromSamples(int[] samples, int width, int height, int threshold)
+	{
+		final BitMask2D mask = new BitMask2D(width, height);
+		final int size = width * height;
+
+		for (int i = 0, idx = 0; i < mask.words.length; i++)
+		{
+			long word = 0;
+			for (int end = Math.min(idx + 64, size), bit = 0; idx < end; idx++, bit++)
+			{
+				if (samples[idx] >= threshold)
+				{
+					word |= 1L << bit;
+				}
+			}
+			mask.words[i] = word;
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Create a mask from an array indexed as [x][y].
+	 *
+	 * @param array A boolean array.
+	 * @return A new mask.
+	 */
+	public static BitMask2D fromArray(boolean[][] array)
+	{
+		final int width = array.length;
+		final int height = width == 0 ? 0 : array[0].length;
+		final BitMask2D mask = new BitMask2D(width, height);
+
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				if (array[x][y])
+				{
+					mask.set(x, y);
+				}
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Create a mask from a binary array indexed as [x][y], e.g. the output array of a slice.
+	 *
+	 * @param array A byte array, whose positive elements are the mask.
+	 * @return A new mask.
+	 */
+	public static BitMask2D fromArray(byte[][] array)
+	{
+		final int width = array.length;
+		final int height = width == 0 ? 0 : array[0].length;
+		final BitMask2D mask = new BitMask2D(width, height);
+
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				if (array[x][y] > 0)
+				{
+					mask.set(x, y);
+				}
+			}
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Convert the mask to a binary array indexed as [x][y].
+	 *
+	 * @param white The value of the set pixels; all other elements are 0.
+	 * @return A byte array.
+	 */
+	public byte[][] toByteArray(byte white)
+	{
+		final byte[][] array = new byte[width][height];
+
+		for (int y = 0, idx = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++, idx++)
+			{
+				if (get(idx))
+				{
+					array[x][y] = white;
+				}
+			}
+		}
+
+		return array;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Gets the number of words of the mask.
+	 *
+	 * @return An int value.
+	 */
+	public int getWordCount()
+	{
+		return words.length;
+	}
+
+	/**
+	 * Gets a word of the mask.
+	 *
+	 * @param i Index of the word; bit b of it is pixel i * 64 + b.
+	 * @return A long value.
+	 */
+	public long getWord(int i)
+	{
+		return words[i];
+	}
+
+	/**
+	 * Gets a pixel.
+	 *
+	 * @param idx Index of the pixel, i.e. y * width + x.
+	 * @return True if the pixel is set.
+	 */
+	public boolean get(int idx)
+	{
+		return (words[idx >>> 6] & (1L << idx)) != 0;
+	}
+
+	/**
+	 * Gets a pixel.
+	 *
+	 * @return True if the pixel is set.
+	 */
+	public boolean get(int x, int y)
+	{
+		return get(y * width + x);
+	}
+
+	/**
+	 * Sets a pixel.
+	 *
+	 * @param idx Index of the pixel, i.e. y * width + x.
+	 */
+	public void set(int idx)
+	{
+		words[idx >>> 6] |= 1L << idx;
+	}
+
+	/**
+	 * Sets a pixel.
+	 */
+	public void set(int x, int y)
+	{
+		set(y * width + x);
+	}
+
+	/**
+	 * Counts the set pixels, i.e. the mask area.
+	 *
+	 * @return The number of set pixels.
+	 */
+	public int count()
+	{
+		int count = 0;
+		for (long word : words)
+		{
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Find the contour of the mask, i.e. the pixels whose value differs from one of their 4
+	 * neighbours, on both sides of the boundary. The pixels on the border of the mask, which lack
+	 * a neighbour, are not part of the contour.
+	 *
+	 * @return A new mask of the contour.
+	 */
+	public BitMask2D findContour()
+	{
+		final BitMask2D contour = new BitMask2D(width, height);
+
+		if (width < 3 || height < 3)
+		{
+			return contour;
+		}
+
+		for (int i = 0; i < words.length; i++)
+		{
+			final int offset = i << 6;
+			final long word = words[i];
+
+			contour.words[i] =
+					(word ^ getBits(offset - 1)) | (word ^ getBits(offset + 1))
+							| (word ^ getBits(offset - width)) | (word ^ getBits(offset + width));
+		}
+
+		// The neighbours of the border wrap around to the next row or fall outside the mask
+		for (int x = 0; x < width; x++)
+		{
+			contour.clear(x);
+			contour.clear((height - 1) * width + x);
+		}
+		for (int y = 1; y < height - 1; y++)
+		{
+			contour.clear(y * width);
+			contour.clear(y * width + width - 1);
+		}
+
+		final int size = width * height;
+		if ((size & 63) != 0)
+		{
+			contour.words[words.length - 1] &= -1L >>> (64 - (size & 63));
+		}
+
+		return contour;
+	}
+
+	private void clear(int idx)
+	{
+		words[idx >>> 6] &= ~(1L << idx);
+	}
+
+	/**
+	 * Gets the 64 bits from the given bit offset on, where bits outside the mask are 0.
+	 */
+	private long getBits(int offset)
+	{
+		// The arithmetic shift rounds negative offsets down
+		final int i = offset >> 6;
+		final int shift = offset & 63;
+
+		final long low = i >= 0 && i < words.length ? words[i] : 0;
+		if (shift == 0)
+		{
+			return low;
+		}
+
+		final long high = i + 1 >= 0 && i + 1 < words.length ? words[i + 1] : 0;
+		return (low >>> shift) | (high << (64 - shift));
+	}
+
+}
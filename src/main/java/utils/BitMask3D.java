@@ -0,0 +1,221 @@
+package utils;
+
+/**
+ * A binary volume packed into bits, 64 voxels per long. The voxels of a plane are stored in
+ * row-major order, i.e. voxel (x, y) of a plane is bit y * width + x, and each plane starts at a
+ * new word, so that threads working on different planes never write to the same word.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class BitMask3D
+{
+
+	private final int width;
+
+	private final int height;
+
+	private final int depth;
+
+	/** The number of words of a plane. */
+	private final int wordsPerPlane;
+
+	private final long[] words;
+
+	/**
+	 * Create an empty volume.
+	 *
+	 * @param width Width (X) of the volume.
+	 * @param height Height (Y) of the volume.
+	 * @param depth Depth (Z) of the volume.
+	 */
+	public BitMask3D(int width, int height, int depth)
+	{
+		this.width = width;
+		this.height = height;
+		this.depth = depth;
+
+		wordsPerPlane = (width * height + 63) >>> 6;
+		words = new long[wordsPerPlane * depth];
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Gets the number of words of a plane. The bits of a plane beyond width * height are 0.
+	 *
+	 * @return An int value.
+	 */
+	public int getWordsPerPlane()
+	{
+		return wordsPerPlane;
+	}
+
+	/**
+	 * Gets a voxel.
+	 *
+	 * @param idx Index of the voxel in its plane, i.e. y * width + x.
+	 * @param z Index of the plane.
+	 * @return True if the voxel is set.
+	 */
+	public boolean get(int idx, int z)
+	{
+		return (words[z * wordsPerPlane + (idx >>> 6)] & (1L << idx)) != 0;
+	}
+
+	/**
+	 * Gets a voxel.
+	 *
+	 * @return True if the voxel is set.
+	 */
+	public boolean get(int x, int y, int z)
+	{
+		return get(y * width + x, z);
+	}
+
+	/**
+	 * Sets a voxel.
+	 *
+	 * @param idx Index of the voxel in its plane, i.e. y * width + x.
+	 * @param z Index of the plane.
+	 */
+	public void set(int idx, int z)
+	{
+		words[z * wordsPerPlane + (idx >>> 6)] |= 1L << idx;
+	}
+
+	/**
+	 * Sets a voxel.
+	 */
+	public void set(int x, int y, int z)
+	{
+		set(y * width + x, z);
+	}
+
+	/**
+	 * Gets a word of a plane.
+	 *
+	 * @param z Index of the plane.
+	 * @param i Index of the word in the plane; bit b of it is voxel i * 64 + b of the plane.
+	 * @return A long value.
+	 */
+	public long getWord(int z, int i)
+	{
+		return words[z * wordsPerPlane + i];
+	}
+
+	/**
+	 * Counts the set voxels of a plane.
+	 *
+	 * @param z Index of the plane.
+	 * @return The number of set voxels.
+	 */
+	public int count(int z)
+	{
+		int count = 0;
+		for (int i = z * wordsPerPlane, end = i + wordsPerPlane; i < end; i++)
+		{
+			count += Long.bitCount(words[i]);
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the number of sections in a given orientation, as {@link model.Volume#getDepth(int)}.
+	 *
+	 * @param orient 0 is axial, 1 is coronal and 2 is sagittal.
+	 * @return The number of sections.
+	 */
+	public int getSectionCount(int orient)
+	{
+		return orient == 0 ? depth : orient == 1 ? height : width;
+	}
+
+	/**
+	 * Gets a section of the volume. The sections are laid out as those of {@link model.Volume},
+	 * i.e. pixel (x, y) of coronal section i is voxel (x, i, y), and pixel (x, y) of sagittal
+	 * section i is voxel (i, x, y).
+	 *
+	 * @param index Index of the section.
+	 * @param orient 0 is axial, 1 is coronal and 2 is sagittal.
+	 * @return A new mask of the section.
+	 */
+	public BitMask2D getSection(int index, int orient)
+	{
+		final int sectionWidth = orient == 2 ? height : width;
+		final int sectionHeight = orient == 0 ? height : depth;
+		final BitMask2D section = new BitMask2D(sectionWidth, sectionHeight);
+
+		boolean isSet;
+		for (int y = 0; y < sectionHeight; y++)
+		{
+			for (int x = 0; x < sectionWidth; x++)
+			{
+				if (orient == 0)
+				{
+					isSet = get(x, y, index);
+				} else if (orient == 1)
+				{
+					isSet = get(x, index, y);
+				} else
+				{
+					isSet = get(index, x, y);
+				}
+
+				if (isSet)
+				{
+					section.set(x, y);
+				}
+			}
+		}
+
+		return section;
+	}
+
+	/**
+	 * Sets the voxels of a section that are set in the given mask, as laid out by
+	 * {@link #getSection(int, int)}, e.g. to put the masks of sections back into axial planes.
+	 *
+	 * @param index Index of the section.
+	 * @param orient 0 is axial, 1 is coronal and 2 is sagittal.
+	 * @param section A mask of the size of the section.
+	 */
+	public void setSection(int index, int orient, BitMask2D section)
+	{
+		for (int y = 0; y < section.getHeight(); y++)
+		{
+			for (int x = 0; x < section.getWidth(); x++)
+			{
+				if (!section.get(x, y))
+				{
+					continue;
+				}
+
+				if (orient == 0)
+				{
+					set(x, y, index);
+				} else if (orient == 1)
+				{
+					set(x, index, y);
+				} else
+				{
+					set(index, x, y);
+				}
+			}
+		}
+	}
+
+}
@@ -10,11 +10,6 @@ package utils;
  * dvalentino@mednet.ucla.edu
  */
 
-import java.awt.Point;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Vector;
-
 import texture.GLCM;
 
 /**
@@ -78,6 +73,28 @@ public class Calculator
 	private double textureForceThreshold = 0.5;
 	private int defaultTextureForce = 2;
 
+	/** Image force of the pixels in the narrow band, reused across iterations. */
+	private double[] bandForce = new double[0];
+
+	/** New and old phi of the band pixels, reused by the in-place updates of the band. */
+	private double[] bandPhi = new double[0];
+	private double[] bandPrev = new double[0];
+
+	/** New phi of the tube pixels, reused by the reinitialization of the tube. */
+	private double[] tubePhi = new double[0];
+
+	/** Method to reinitialize phi to a signed distance function. */
+	private LSConstants.ReinitMethod reinitMethod = LSConstants.ReinitMethod.Sussman;
+
+	/** Fast sweeping reinitializer, created on first use. */
+	private FastSweeping fastSweeping;
+
+	/** The number of quantized normal directions of the precomputed intensity extrema. */
+	private static final int EXTREMA_DIRECTIONS = 16;
+
+	/** Precomputed intensity extrema along normal directions; null to probe the image. */
+	private DirectionalExtrema directionalExtrema;
+
 	/**
 	 * Constructor.
 	 * 
@@ -101,16 +118,46 @@ public class Calculator
 		bT = thresholdSelector;
 	}
 
+	/**
+	 * Copy the parameters of a calculator, so that the copy can evolve a
+	 * slice concurrently with the original. The read-only directional extrema
+	 * are shared, while the buffers reused across iterations are not.
+	 * 
+	 * @param calculator
+	 *            The Calculator to copy.
+	 */
+	public Calculator(Calculator calculator)
+	{
+		H = calculator.H;
+		DELTA_T = calculator.DELTA_T;
+		MU = calculator.MU;
+		_fFactor = calculator._fFactor;
+		EPSILON = calculator.EPSILON;
+		X_DIM = calculator.X_DIM;
+		Y_DIM = calculator.Y_DIM;
+		_minD = calculator._minD;
+		_maxD = calculator._maxD;
+		_xyDim = calculator._xyDim;
+		bT = calculator.bT;
+		BOUNDARY_VALUE = calculator.BOUNDARY_VALUE;
+		textureForceThreshold = calculator.textureForceThreshold;
+		defaultTextureForce = calculator.defaultTextureForce;
+		reinitMethod = calculator.reinitMethod;
+		directionalExtrema = calculator.directionalExtrema;
+	}
+
 	/**
 	 * Calculates the array F. Each element of the array is a double number
 	 * whose value is the image force.
 	 */
-	public double[][] calculateImageForce(double[][] phi, double[][] delta_eps, short[][] inputArray, double intens2,
+	public Field2D calculateImageForce(Field2D phi, Field2D delta_eps, short[] inputArray, double intens2,
 			double intens10, double intensM, double intens98, LSConstants.LevelsetType levelsetType, GLCM textureImage,
 			double textureCoefficient)
 	{
 
-		final double[][] imageForce = new double[X_DIM][Y_DIM];
+		final Field2D imageForce = new Field2D(X_DIM, Y_DIM);
+		final double[] forceData = imageForce.getData();
+		final double[] deltaData = delta_eps.getData();
 
 		// Image force contains intensity and texture force
 		double intensityForce = 0;
@@ -119,12 +166,12 @@ public class Calculator
 		// Find out zero level set and calculate force of zero level set
 		for (int y = 1; y < Y_DIM - 1; y++)
 		{
-			for (int x = 1; x < X_DIM - 1; x++)
+			for (int x = 1, idx = y * X_DIM + 1; x < X_DIM - 1; x++, idx++)
 			{
 				// Only level set within the band are updated and that level
 				// sets outside the band
 				// remain stationary
-				if (delta_eps[x][y] > 0)
+				if (deltaData[idx] > 0)
 				{
 					// Step1: Calculate intensity force for zero level set
 					intensityForce = calculateIntensityForce(x, y, phi, inputArray, intens2, intens10, intensM,
@@ -134,14 +181,14 @@ public class Calculator
 					if (LSConstants.LevelsetType.Texture == levelsetType)
 					{
 						textureForce = calculateTextureForce(x, y, phi, inputArray,
-								textureImage.getGLCMFeatures().getEnergy());
+								textureImage.getGLCMFeatures().getEnergy().getData());
 					}
 
 					// IJ.log("Intensity/Texture Force = " + intensityForce +
 					// "/" + textureForce);
 					// Step 3: Adjust the weight of intensity force and texture
 					// force
-					imageForce[x][y] = (1 - textureCoefficient) * intensityForce + textureCoefficient * textureForce;
+					forceData[idx] = (1 - textureCoefficient) * intensityForce + textureCoefficient * textureForce;
 
 				}
 			}
@@ -150,31 +197,76 @@ public class Calculator
 		return imageForce;
 	}
 
+	/**
+	 * Narrow band version of {@link #calculateImageForce}. The force is only calculated for the
+	 * pixels in the band, and stored in the order of the band.
+	 * 
+	 * @param band
+	 *            The narrow band of phi.
+	 * @return A double array whose i-th element is the image force of the i-th band pixel.
+	 */
+	public double[] calculateImageForce(Field2D phi, NarrowBand band, short[] inputArray, double intens2,
+			double intens10, double intensM, double intens98, LSConstants.LevelsetType levelsetType, GLCM textureImage,
+			double textureCoefficient)
+	{
+		if (bandForce.length < band.size())
+		{
+			bandForce = new double[band.size() * 2];
+		}
+
+		double intensityForce = 0;
+		double textureForce = 0;
+		int idx, x, y;
+
+		for (int i = 0; i < band.size(); i++)
+		{
+			idx = band.getIndex(i);
+			x = idx % X_DIM;
+			y = idx / X_DIM;
+
+			if (x < 1 || x >= X_DIM - 1 || y < 1 || y >= Y_DIM - 1)
+			{
+				bandForce[i] = 0;
+				continue;
+			}
+
+			intensityForce = calculateIntensityForce(x, y, phi, inputArray, intens2, intens10, intensM, intens98);
+
+			if (LSConstants.LevelsetType.Texture == levelsetType)
+			{
+				textureForce = calculateTextureForce(x, y, phi, inputArray, textureImage.getGLCMFeatures().getEnergy().getData());
+			}
+
+			bandForce[i] = (1 - textureCoefficient) * intensityForce + textureCoefficient * textureForce;
+		}
+
+		return bandForce;
+	}
+
 	/**
 	 * Calculate delta_epsilon. Equation 2.16
 	 * 
 	 * @param phi
-	 *            A double array.
-	 * @return A double array of delta_eps.
+	 *            A Field2D object.
+	 * @return A Field2D object of delta_eps.
 	 */
-	public double[][] calculateHEpsilonAndDeltaEpsilon3(double[][] phi)
+	public Field2D calculateHEpsilonAndDeltaEpsilon3(Field2D phi)
 	{
 
-		double[][] delta_eps = new double[X_DIM][Y_DIM];
+		final Field2D delta_eps = new Field2D(X_DIM, Y_DIM);
+		final double[] deltaData = delta_eps.getData();
+		final double[] phiData = phi.getData();
 
 		// epsilon = h = delta_x = delta_y
 		double eps = 1.5 * H;
 		double var;
 
-		for (int x = 0; x < X_DIM; x++)
+		for (int idx = 0; idx < phiData.length; idx++)
 		{
-			for (int y = 0; y < Y_DIM; y++)
+			var = phiData[idx];
+			if (var < eps && var > (-eps))
 			{
-				var = phi[x][y];
-				if (var < eps && var > (-eps))
-				{
-					delta_eps[x][y] = (1 + Math.cos(Math.PI * var / eps)) / (2 * eps);
-				}
+				deltaData[idx] = (1 + Math.cos(Math.PI * var / eps)) / (2 * eps);
 			}
 		}
 
@@ -185,44 +277,40 @@ public class Calculator
 	 * Calculate median intensity from the inputArray.
 	 * 
 	 * @param phi
-	 *            A double array.
+	 *            A Field2D object.
 	 * @param inputArray
-	 *            InputArray to be queried.
+	 *            InputArray to be queried, in row-major order.
 	 * @return A double value.
 	 */
-	public double calculateMedianIntensity(double[][] phi, short[][] inputArray)
+	public double calculateMedianIntensity(Field2D phi, short[] inputArray)
 	{
 		double median = 0;
 
 		// Find the intensity of the pixel at the middle of the intensity queue
 		int count = 0;
 
+		final double[] phiData = phi.getData();
+
 		// Find maxI
 		int max = 0;
-		for (int y = 0; y < Y_DIM; y++)
+		for (int idx = 0; idx < phiData.length; idx++)
 		{
-			for (int x = 0; x < X_DIM; x++)
+			if (phiData[idx] > 0)
 			{
-				if (phi[x][y] > 0)
-				{
-					if (max < inputArray[x][y])
-						max = inputArray[x][y];
-				}
+				if (max < inputArray[idx])
+					max = inputArray[idx];
 			}
 		}
 
 		int[] hist = new int[max + 1];
 		int intens;
-		for (int y = 0; y < Y_DIM; y++)
+		for (int idx = 0; idx < phiData.length; idx++)
 		{
-			for (int x = 0; x < X_DIM; x++)
+			if (phiData[idx] > 0)
 			{
-				if (phi[x][y] > 0)
-				{
-					count++;
-					intens = inputArray[x][y];
-					hist[intens]++;
-				}
+				count++;
+				intens = inputArray[idx];
+				hist[intens]++;
 			}
 		}
 
@@ -244,24 +332,27 @@ public class Calculator
 	 * Calculates the new phi.
 	 * 
 	 * @param phi
-	 *            A double array.
+	 *            A Field2D object.
 	 * @param delta_eps
-	 *            A double array.
+	 *            A Field2D object.
 	 * @param fArray
-	 *            A double array of image-based force.
-	 * @return A double array representing the phi.
+	 *            A Field2D object of image-based force.
+	 * @return A Field2D object representing the phi.
 	 */
-	public double[][] calculatePhiNew2(double[][] phi, double[][] delta_eps, double[][] fArray)
+	public Field2D calculatePhiNew2(Field2D phi, Field2D delta_eps, Field2D fArray)
 	{
-		double[][] phiNew = LSUtil.copy2DAry(phi);
+		final Field2D phiNew = phi.copy();
+		final double[] newData = phiNew.getData();
+		final double[] deltaData = delta_eps.getData();
+		final double[] forceData = fArray.getData();
 
-		for (int x = 2; x < X_DIM - 2; x++)
+		for (int y = 2; y < Y_DIM - 2; y++)
 		{
-			for (int y = 2; y < Y_DIM - 2; y++)
+			for (int idx = y * X_DIM + 2; idx < (y + 1) * X_DIM - 2; idx++)
 			{
-				if (Math.abs(fArray[x][y]) > 0)
+				if (Math.abs(forceData[idx]) > 0)
 				{
-					phiNew[x][y] = calculatePhiNew(x, y, phi, delta_eps, fArray[x][y]);
+					newData[idx] = calculatePhiNew(idx, phi.getData(), deltaData[idx], forceData[idx]);
 				}
 			}
 		}
@@ -269,21 +360,124 @@ public class Calculator
 	}
 
 	/**
-	 * Calculates the new phi.
+	 * Narrow band version of {@link #calculatePhiNew2}, which updates the pixels in the band in
+	 * place. The new values are computed from the old phi into a buffer of the band size before
+	 * they are written back, so the result is the same as that of the full grid, where the pixels
+	 * outside the band have delta_epsilon 0 and keep their values. The old values are kept for
+	 * {@link #calculateMeanChange(Field2D, NarrowBand)}.
+	 * 
+	 * @param phi
+	 *            A Field2D object, which is updated.
+	 * @param band
+	 *            The narrow band of phi.
+	 * @param fArray
+	 *            Image-based force of the band pixels.
+	 */
+	public void updatePhi(Field2D phi, NarrowBand band, double[] fArray)
+	{
+		final double[] data = phi.getData();
+
+		if (bandPhi.length < band.size())
+		{
+			bandPhi = new double[band.size() * 2];
+			bandPrev = new double[band.size() * 2];
+		}
+
+		int idx, x, y;
+		for (int i = 0; i < band.size(); i++)
+		{
+			idx = band.getIndex(i);
+			x = idx % X_DIM;
+			y = idx / X_DIM;
+
+			bandPrev[i] = data[idx];
+
+			if (x >= 2 && x < X_DIM - 2 && y >= 2 && y < Y_DIM - 2 && Math.abs(fArray[i]) > 0)
+			{
+				bandPhi[i] = calculatePhiNew(idx, data, band.getDelta(i), fArray[i]);
+			} else
+			{
+				bandPhi[i] = data[idx];
+			}
+		}
+
+		for (int i = 0; i < band.size(); i++)
+		{
+			data[band.getIndex(i)] = bandPhi[i];
+		}
+	}
+
+	/**
+	 * Calculates the mean absolute change of phi over the pixels in the
+	 * narrow band since the last {@link #updatePhi(Field2D, NarrowBand, double[])},
+	 * i.e. how far the level sets around the zero level set have moved in one
+	 * iteration.
 	 * 
-	 * @param x
-	 *            X-coord of the pixel.
-	 * @param y
-	 *            Y-coord of the pixel.
 	 * @param phi
-	 *            A double array.
+	 *            Phi after the iteration.
+	 * @param band
+	 *            The narrow band phi was evolved in.
+	 * @return The mean change, or 0 if the band is empty.
+	 */
+	public double calculateMeanChange(Field2D phi, NarrowBand band)
+	{
+		final double[] data = phi.getData();
+
+		double change = 0;
+		for (int i = 0; i < band.size(); i++)
+		{
+			change += Math.abs(data[band.getIndex(i)] - bandPrev[i]);
+		}
+
+		return band.size() > 0 ? change / band.size() : 0;
+	}
+
+	/**
+	 * Calculates the mean absolute change of phi over the pixels where
+	 * delta_epsilon is non-zero.
+	 * 
+	 * @param phi
+	 *            Phi before the iteration.
+	 * @param phiNew
+	 *            Phi after the iteration.
 	 * @param delta_eps
-	 *            A double array.
+	 *            delta_epsilon of phi.
+	 * @return The mean change, or 0 if there is no such pixel.
+	 */
+	public double calculateMeanChange(Field2D phi, Field2D phiNew, Field2D delta_eps)
+	{
+		final double[] data = phi.getData();
+		final double[] newData = phiNew.getData();
+		final double[] deltaData = delta_eps.getData();
+
+		double change = 0;
+		int count = 0;
+		for (int idx = 0; idx < data.length; idx++)
+		{
+			if (deltaData[idx] != 0)
+			{
+				change += Math.abs(newData[idx] - data[idx]);
+				count++;
+			}
+		}
+
+		return count > 0 ? change / count : 0;
+	}
+
+	/**
+	 * Calculates the new phi.
+	 * 
+	 * @param idx
+	 *            Index of the pixel.
+	 * @param phi
+	 *            Values of phi in row-major order.
+	 * @param delta
+	 *            delta_epsilon of the pixel.
 	 * @param f
 	 *            Image-based force.
 	 * @return A double value representing the phi value at the queried pixel.
 	 */
-	public double calculatePhiNew(int x, int y, double[][] phi, double[][] delta_eps, double imageForce)
+	private double calculatePhiNew(int idx, double[] phi, double delta, double imageForce)
 	{
 		double d1, d2, d3, d4, d;
 		double u;
@@ -291,22 +485,23 @@ public class Calculator
 		double phiNew;
 
 		// Calculate d1, d2, d3, d4
-		d1 = calculateD1(phi, x, y);
-		d2 = calculateD1(phi, x - 1, y);
-		d3 = calculateD3(phi, x, y);
-		d4 = calculateD3(phi, x, y - 1);
+		d1 = calculateD1(phi, idx);
+		d2 = calculateD1(phi, idx - 1);
+		d3 = calculateD3(phi, idx);
+		d4 = calculateD3(phi, idx - X_DIM);
 
 		// Calculate m = delta_t * delta_eps[x][y] * mu / h^2
-		m = DELTA_T * delta_eps[x][y] * MU / (H * H);
+		m = DELTA_T * delta * MU / (H * H);
 
 		// Calculate d
 		d = 1 + m * (d1 + d2 + d3 + d4);
 
 		// double fFactor = 255*255;
 		double fFactor = _fFactor;
-		u = DELTA_T * delta_eps[x][y] * fFactor * imageForce;
+		u = DELTA_T * delta * fFactor * imageForce;
 
-		phiNew = (phi[x][y] + m * (d1 * phi[x + 1][y] + d2 * phi[x - 1][y] + d3 * phi[x][y + 1] + d4 * phi[x][y - 1])
+		phiNew = (phi[idx] + m * (d1 * phi[idx + 1] + d2 * phi[idx - 1] + d3 * phi[idx + X_DIM] + d4
+				* phi[idx - X_DIM])
 				+ u) / d;
 
 		return phiNew;
@@ -345,25 +540,37 @@ public class Calculator
 	 * elements will be set as 0.
 	 * 
 	 * @param d
-	 *            A double array.
+	 *            A Field2D object.
 	 * @return A byte, binary array.
 	 */
-	public byte[][] convertToBinaryArray(double[][] d)
+	public byte[][] convertToBinaryArray(Field2D d)
 	{
 		byte[][] outputArray = new byte[X_DIM][Y_DIM];
-		for (int x = 0; x < X_DIM; x++)
+		final double[] data = d.getData();
+
+		for (int y = 0, idx = 0; y < Y_DIM; y++)
 		{
-			for (int y = 0; y < Y_DIM; y++)
+			for (int x = 0; x < X_DIM; x++, idx++)
 			{
 
 				// Set all positive level sets with a unique positive number
-				if (d[x][y] >= BOUNDARY_VALUE)
+				if (data[idx] >= BOUNDARY_VALUE)
 					outputArray[x][y] = 40;
 			}
 		}
 		return outputArray;
 	}
 
+	/**
+	 * Creates an empty narrow band of the grid.
+	 * 
+	 * @return A NarrowBand object.
+	 */
+	public NarrowBand createNarrowBand()
+	{
+		return new NarrowBand(X_DIM, Y_DIM, 1.5 * H);
+	}
+
 	/**
 	 * Get velocity.
 	 * 
@@ -380,19 +587,101 @@ public class Calculator
 	 * and has positive sign if it is within the zero level set curve, and has
 	 * negative sign if it is out side of the zero level set curve.
 	 * 
+	 * With {@link LSConstants.ReinitMethod#FastSweeping} the given array is
+	 * reinitialized in place and returned; otherwise a new array is returned.
+	 * 
 	 * @param array
-	 *            A double array to be queried.
-	 * @return A double array.
+	 *            A Field2D object to be queried.
+	 * @return A Field2D object.
 	 */
-	public double[][] reinitialize(double[][] array)
+	public Field2D reinitialize(Field2D array)
 	{
-		double[][] newArray = null;
+		if (LSConstants.ReinitMethod.FastSweeping == reinitMethod)
+		{
+			if (fastSweeping == null)
+			{
+				fastSweeping = new FastSweeping(X_DIM, Y_DIM);
+			}
+			return fastSweeping.reinitialize(array);
+		}
+
+		return reinitializeSussman(array);
+	}
+
+	/**
+	 * Narrow band version of {@link #reinitialize(Field2D)}, which reinitializes phi in place
+	 * within the tube around the band only. The rest of phi keeps its sign, which is all the
+	 * mask needs, while its magnitude is that of an earlier reinitialization.
+	 * 
+	 * @param phi
+	 *            A Field2D object to be reinitialized.
+	 * @param band
+	 *            The narrow band of phi.
+	 */
+	public void reinitialize(Field2D phi, NarrowBand band)
+	{
+		band.buildTube();
+
+		if (LSConstants.ReinitMethod.FastSweeping == reinitMethod)
+		{
+			if (fastSweeping == null)
+			{
+				fastSweeping = new FastSweeping(X_DIM, Y_DIM);
+			}
+			fastSweeping.reinitialize(phi, band.getTubeIndices(), band.tubeSize());
+		} else
+		{
+			reinitializeSussman(phi, band.getTubeIndices(), band.tubeSize());
+		}
+	}
+
+	/**
+	 * Precompute the intensity extrema of the slice along quantized normal directions.
+	 * 
+	 * @param inputArray
+	 *            Intensities of the slice in row-major order.
+	 * @return A DirectionalExtrema object.
+	 */
+	public DirectionalExtrema createDirectionalExtrema(short[] inputArray)
+	{
+		return new DirectionalExtrema(X_DIM, Y_DIM, EXTREMA_DIRECTIONS, _minD, _maxD, inputArray);
+	}
+
+	/**
+	 * Set the precomputed intensity extrema used by the intensity force.
+	 * 
+	 * @param directionalExtrema
+	 *            Extrema of the slice, or null to probe the image along the exact normal.
+	 */
+	public void setDirectionalExtrema(DirectionalExtrema directionalExtrema)
+	{
+		this.directionalExtrema = directionalExtrema;
+	}
+
+	/**
+	 * Set the method to reinitialize phi.
+	 * 
+	 * @param reinitMethod
+	 *            Sussman's iterative method or fast sweeping.
+	 */
+	public void setReinitMethod(LSConstants.ReinitMethod reinitMethod)
+	{
+		this.reinitMethod = reinitMethod;
+	}
+
+	/**
+	 * Reinitialize phi by up to 200 iterations of Sussman's method.
+	 */
+	private Field2D reinitializeSussman(Field2D array)
+	{
+		Field2D newField = null;
+		double[] newArray;
 
 		double old;
 		double dis;
 		int MAX_ITER = 200;
 
-		double[][] tempArray = array;
+		double[] tempArray = array.getData();
 		double s;
 		boolean isStationary = false;
 		int reini = 0;
@@ -400,30 +689,31 @@ public class Calculator
 		{
 
 			// Allocate newArray
-			newArray = new double[X_DIM][Y_DIM];
+			newField = new Field2D(X_DIM, Y_DIM);
+			newArray = newField.getData();
 			for (int y = 1; y < (Y_DIM - 1); y++)
 			{
-				for (int x = 1; x < (X_DIM - 1); x++)
+				for (int idx = y * X_DIM + 1; idx < (y + 1) * X_DIM - 1; idx++)
 				{
 
-					old = tempArray[x][y];
+					old = tempArray[idx];
 
 					// Revision of Sussman's phi0 construction done by Peng
-					dis = calculateDistance(x, y, tempArray);
+					dis = calculateDistance(idx, tempArray);
 					s = old / Math.sqrt(old * old + 1);
-					newArray[x][y] = old - DELTA_T * s * (dis - 1);
+					newArray[idx] = old - DELTA_T * s * (dis - 1);
 
 				}
 			}
 			for (int x = 0; x < X_DIM; x++)
 			{
-				newArray[x][0] = newArray[x][1];
-				newArray[x][Y_DIM - 1] = newArray[x][Y_DIM - 2];
+				newArray[x] = newArray[X_DIM + x];
+				newArray[(Y_DIM - 1) * X_DIM + x] = newArray[(Y_DIM - 2) * X_DIM + x];
 			}
 			for (int y = 0; y < Y_DIM; y++)
 			{
-				newArray[0][y] = newArray[1][y];
-				newArray[X_DIM - 1][y] = newArray[X_DIM - 2][y];
+				newArray[y * X_DIM] = newArray[y * X_DIM + 1];
+				newArray[y * X_DIM + X_DIM - 1] = newArray[y * X_DIM + X_DIM - 2];
 			}
 
 			// Check stationary
@@ -431,11 +721,11 @@ public class Calculator
 			int M = 0;
 			for (int y = 1; y < (Y_DIM - 1); y++)
 			{
-				for (int x = 1; x < (X_DIM - 1); x++)
+				for (int idx = y * X_DIM + 1; idx < (y + 1) * X_DIM - 1; idx++)
 				{
-					if (Math.abs(tempArray[x][y]) > 1.5)
+					if (Math.abs(tempArray[idx]) > 1.5)
 					{
-						sum += Math.abs(newArray[x][y] - tempArray[x][y]);
+						sum += Math.abs(newArray[idx] - tempArray[idx]);
 						M++;
 					}
 				}
@@ -448,7 +738,73 @@ public class Calculator
 			tempArray = newArray;
 			reini++;
 		}
-		return newArray;
+		return newField;
+	}
+
+	/**
+	 * Reinitialize the given pixels of phi in place by up to 200 iterations of Sussman's method.
+	 * The pixels on the border of the grid are left unchanged.
+	 */
+	private void reinitializeSussman(Field2D array, int[] tube, int size)
+	{
+		final double[] data = array.getData();
+		final int MAX_ITER = 200;
+
+		if (tubePhi.length < size)
+		{
+			tubePhi = new double[size * 2];
+		}
+
+		double old;
+		double dis;
+		double s;
+		double sum;
+		int near;
+		int M;
+		int idx, x, y;
+		boolean isStationary = false;
+		int reini = 0;
+		while (!isStationary && reini < MAX_ITER)
+		{
+			sum = 0;
+			near = 0;
+			for (int i = 0; i < size; i++)
+			{
+				idx = tube[i];
+				x = idx % X_DIM;
+				y = idx / X_DIM;
+
+				old = data[idx];
+				if (x < 1 || x >= X_DIM - 1 || y < 1 || y >= Y_DIM - 1)
+				{
+					tubePhi[i] = old;
+					continue;
+				}
+
+				dis = calculateDistance(idx, data);
+				s = old / Math.sqrt(old * old + 1);
+				tubePhi[i] = old - DELTA_T * s * (dis - 1);
+
+				if (Math.abs(old) > 1.5)
+				{
+					sum += Math.abs(tubePhi[i] - old);
+				} else
+				{
+					near++;
+				}
+			}
+
+			for (int i = 0; i < size; i++)
+			{
+				data[tube[i]] = tubePhi[i];
+			}
+
+			// Check stationary as the full grid, where the pixels outside the tube lie beyond
+			// the band and are counted as unchanged
+			M = (X_DIM - 2) * (Y_DIM - 2) - near;
+			isStationary = M <= 0 || sum / M < DELTA_T;
+			reini++;
+		}
 	}
 
 	/**
@@ -466,11 +822,11 @@ public class Calculator
 	 * d1 = (phi[x+1][y] - phi[x][y])/ sqrt(((phi[x+1][y]-phi[x][y])/h)^2 +
 	 * ((phi[x][y+1]-phi[x][y-1])/2h)^2)
 	 */
-	private double calculateD1(double[][] phi, int x, int y)
+	private double calculateD1(double[] phi, int idx)
 	{
 		double d1 = 0;
-		double temp1 = (phi[x + 1][y] - phi[x][y]) / H;
-		double temp2 = (phi[x][y + 1] - phi[x][y - 1]) / (2 * H);
+		double temp1 = (phi[idx + 1] - phi[idx]) / H;
+		double temp2 = (phi[idx + X_DIM] - phi[idx - X_DIM]) / (2 * H);
 		double temp3 = Math.sqrt(temp1 * temp1 + temp2 * temp2);
 		if (Math.abs(temp3) > 0)
 			d1 = 1 / temp3;
@@ -481,11 +837,11 @@ public class Calculator
 	 * d2 = (phi[x][y+1] - phi[x][y]) / sqrt(((phi[x+1][y]-phi[x-1][y])/2h)^2 +
 	 * ((phi[x][y+1]-phi[x][y])/h)^2)
 	 */
-	private double calculateD3(double[][] phi, int x, int y)
+	private double calculateD3(double[] phi, int idx)
 	{
 		double d2 = 0;
-		double temp1 = (phi[x + 1][y] - phi[x - 1][y]) / (2 * H);
-		double temp2 = (phi[x][y + 1] - phi[x][y]) / H;
+		double temp1 = (phi[idx + 1] - phi[idx - 1]) / (2 * H);
+		double temp2 = (phi[idx + X_DIM] - phi[idx]) / H;
 		double temp3 = Math.sqrt(temp1 * temp1 + temp2 * temp2);
 		if (Math.abs(temp3) > 0)
 			d2 = 1 / temp3;
@@ -495,18 +851,18 @@ public class Calculator
 	/**
 	 * The distance used in reinitialization.
 	 */
-	private double calculateDistance(int x, int y, double[][] phi)
+	private double calculateDistance(int idx, double[] phi)
 	{
 		// The exact equation should be a = (phi[x][y] - phi[x-1][y] ) / H
-		double a = phi[x][y] - phi[x - 1][y];
-		double b = phi[x + 1][y] - phi[x][y];
-		double c = phi[x][y] - phi[x][y - 1];
-		double d = phi[x][y + 1] - phi[x][y];
+		double a = phi[idx] - phi[idx - 1];
+		double b = phi[idx + 1] - phi[idx];
+		double c = phi[idx] - phi[idx - X_DIM];
+		double d = phi[idx + X_DIM] - phi[idx];
 
 		double ans = 0;
-		if (phi[x][y] != 0)
+		if (phi[idx] != 0)
 		{
-			if (phi[x][y] > 0)
+			if (phi[idx] > 0)
 			{
 				if (a < 0)
 					a = 0;
@@ -535,46 +891,89 @@ public class Calculator
 	}
 
 	/**
-	 * Calculate the image-based force (Fimg) at (x, y).
+	 * Calculate the image-based force (Fimg) at (x, y). The intensities are probed along the
+	 * normal direction, and the minimum of the first minD samples and the maximum of the first
+	 * maxD samples are kept on the fly.
 	 * 
 	 */
-	public double calculateIntensityForce(int x, int y, double[][] phi, short[][] inputArray, double intens2,
+	public double calculateIntensityForce(int x, int y, Field2D phi, short[] inputArray, double intens2,
 			double intens10, double intensM, double intens98)
 	{
 		double f = 0;
-		double[] normal;
 		int minD = _minD;
 		int maxD = _maxD;
 
 		// Calculate the direction of the normal of phi(x,y)
-		normal = calculateNorDir(x, y, phi);
+		final double[] data = phi.getData();
+		final int idx = y * X_DIM + x;
+		double normalX = (data[idx + 1] - data[idx - 1]) / 2;
+		double normalY = (data[idx + X_DIM] - data[idx - X_DIM]) / 2;
+		final double d = Math.sqrt(normalX * normalX + normalY * normalY);
 
-		final Vector<Integer> intensities = new Vector<Integer>(1, 1);
+		if (d == 0)
+		{
+			normalX = 0;
+			normalY = 0;
+		} else
+		{
+			normalX = normalX / d;
+			normalY = normalY / d;
+		}
 
 		int tempX;
 		int tempY;
 		int samplingDis = maxD > minD ? maxD : minD;
 
+		// The first sample is always taken, as (x, y) lies inside the image
+		int count = 0;
+		int tempMin = 0;
+		int tempMax = 0;
+		int intensity;
+
+		if (directionalExtrema != null)
+		{
+			// Look up the extrema along the nearest quantized direction
+			if (d == 0)
+			{
+				tempMin = inputArray[idx];
+				tempMax = tempMin;
+			} else
+			{
+				final int direction = directionalExtrema.getDirection(normalX, normalY);
+				tempMin = directionalExtrema.getMin(direction, idx);
+				tempMax = directionalExtrema.getMax(direction, idx);
+			}
+			samplingDis = 0;
+		}
+
 		for (int i = 0; i < samplingDis; i++)
 		{
 
 			// calculate the coords of pixels
-			tempX = (int) Math.floor(x + i * normal[0] + 0.5);
-			tempY = (int) Math.floor(y + i * normal[1] + 0.5);
+			tempX = (int) Math.floor(x + i * normalX + 0.5);
+			tempY = (int) Math.floor(y + i * normalY + 0.5);
 
 			// If inside the image
 			if (tempX < X_DIM && tempY < Y_DIM && tempX > 0 && tempY > 0)
 			{
-				intensities.add(new Integer(inputArray[tempX][tempY]));
+				intensity = inputArray[tempY * X_DIM + tempX];
+
+				if (count == 0 || (count < minD && intensity < tempMin))
+				{
+					tempMin = intensity;
+				}
+				if (count == 0 || (count < maxD && intensity > tempMax))
+				{
+					tempMax = intensity;
+				}
+				count++;
 			}
 		}
 
 		// Equation 2.8
-		double tempMin = getMin(intensities, minD);
 		double minI = Math.max(intens2, Math.min(tempMin, intensM));
 
 		// Equation 2.9
-		double tempMax = getMax(intensities, maxD);
 		double maxI = Math.max(intensM, tempMax);
 
 		// Equation 2.7
@@ -587,92 +986,97 @@ public class Calculator
 	}
 
 	/**
-	 * [New] Calculate texture force of location [x,y]
+	 * [New] Calculate texture force of location [x,y]. The texture is probed along the outward
+	 * and the inward normal directions, and the largest difference between two consecutive
+	 * samples is kept on the fly.
 	 * 
 	 * @param x
 	 * @param y
 	 * @param phi
 	 * @param inputArray
-	 * @return
+	 * @return Index of the largest difference, negative for inward; or the default texture force
+	 *         if there are no significant difference.
 	 */
-	private double calculateTextureForce(int x, int y, double[][] phi, short[][] inputArray, double[][] textureImg)
+	private double calculateTextureForce(int x, int y, Field2D phi, short[] inputArray, double[] textureData)
 	{
 		final int samplingDis = _maxD > _minD ? _maxD : _minD;
 
-		// Calculate outward normal direction
-		final Point outwardNormal = calculateNormalDirection(x, y, phi);
+		// Calculate outward normal direction, rounded to the nearest pixel
+		final double[] data = phi.getData();
+		final int idx = y * X_DIM + x;
+		final double phi_x = (data[idx + 1] - data[idx - 1]) / 2;
+		final double phi_y = (data[idx + X_DIM] - data[idx - X_DIM]) / 2;
+		final double d = Math.sqrt(phi_y * phi_y + phi_x * phi_x);
 
-		// Calculate inward normal direction
-		final Point inwardNormal = new Point();
-		inwardNormal.setLocation(outwardNormal.getX() * (-1), outwardNormal.getY() * (-1));
+		int normalX = 0;
+		int normalY = 0;
+		if (d != 0)
+		{
+			normalX = (int) Math.floor(phi_x / d + 0.5);
+			normalY = (int) Math.floor(phi_y / d + 0.5);
+		}
 
-		// Collect inward and outward intensities along normal directions
-		final List<Double> outwardIntensities = new ArrayList<Double>();
-		final List<Double> inwardIntensities = new ArrayList<Double>();
+		// Largest difference between consecutive inward and outward samples
+		int inwardCount = 0;
+		int outwardCount = 0;
+		double lastInward = 0;
+		double lastOutward = 0;
+		double inwardDiffVal = 0;
+		double outwardDiffVal = 0;
+		int inwardDiffIdx = 0;
+		int outwardDiffIdx = 0;
 
 		int tempX;
 		int tempY;
+		double sample;
 
 		for (int i = 0; i < samplingDis; i++)
 		{
 
 			// calculate the coords of pixels
-			tempX = (int) Math.floor(x + i * outwardNormal.getX() + 0.5);
-			tempY = (int) Math.floor(y + i * outwardNormal.getY() + 0.5);
+			tempX = x + i * normalX;
+			tempY = y + i * normalY;
 
 			// If inside the image
 			if (tempX < X_DIM && tempY < Y_DIM && tempX > 0 && tempY > 0)
 			{
-				outwardIntensities.add(textureImg[tempY][tempX]);
+				sample = textureData[tempY * X_DIM + tempX];
+				if (outwardCount > 0 && Math.abs(lastOutward - sample) > outwardDiffVal)
+				{
+					outwardDiffVal = Math.abs(lastOutward - sample);
+					outwardDiffIdx = outwardCount - 1;
+				}
+				lastOutward = sample;
+				outwardCount++;
 			}
 
 			// calculate the coords of pixels
-			tempX = (int) Math.floor(x + i * inwardNormal.getX() + 0.5);
-			tempY = (int) Math.floor(y + i * inwardNormal.getY() + 0.5);
+			tempX = x - i * normalX;
+			tempY = y - i * normalY;
 
 			// If inside the image
 			if (tempX < X_DIM && tempY < Y_DIM && tempX > 0 && tempY > 0)
 			{
-				inwardIntensities.add(textureImg[tempY][tempX]);
+				sample = textureData[tempY * X_DIM + tempX];
+				if (inwardCount > 0 && Math.abs(lastInward - sample) > inwardDiffVal)
+				{
+					inwardDiffVal = Math.abs(lastInward - sample);
+					// Negative for inward index
+					inwardDiffIdx = (inwardCount - 1) * (-1);
+				}
+				lastInward = sample;
+				inwardCount++;
 			}
 
 		}
 
-		// Calculate the texture force based on inward and outward normal
-		// textures
-		return calculateSingleTextureForce(inwardIntensities, outwardIntensities);
-
-	}
-
-	/**
-	 * Calculate the texture force of single point
-	 * 
-	 * @param inwardIntensities
-	 * @param outwardIntensities
-	 * @return
-	 */
-	private int calculateSingleTextureForce(List<Double> inwardIntensities, List<Double> outwardIntensities)
-	{
-		int maxDiffIdx = 0;
-		double maxDiffVal = 0;
-
-		for (int i = 0; i < inwardIntensities.size() - 1; i++)
+		// Outward difference wins only if it is strictly larger
+		double maxDiffVal = inwardDiffVal;
+		int maxDiffIdx = inwardDiffIdx;
+		if (outwardDiffVal > maxDiffVal)
 		{
-			if (Math.abs(inwardIntensities.get(i) - inwardIntensities.get(i + 1)) > maxDiffVal)
-			{
-				maxDiffVal = Math.abs(inwardIntensities.get(i) - inwardIntensities.get(i + 1));
-				// Negative for inward index
-				maxDiffIdx = i * (-1);
-			}
-		}
-
-		for (int i = 0; i < outwardIntensities.size() - 1; i++)
-		{
-			if (Math.abs(outwardIntensities.get(i) - outwardIntensities.get(i + 1)) > maxDiffVal)
-			{
-				maxDiffVal = Math.abs(outwardIntensities.get(i) - outwardIntensities.get(i + 1));
-				maxDiffIdx = i;
-			}
+			maxDiffVal = outwardDiffVal;
+			maxDiffIdx = outwardDiffIdx;
 		}
 
 		// Append default texture force If there are no significant difference
@@ -680,126 +1084,4 @@ public class Calculator
 
 		return maxDiffIdx;
 	}
-
-	/**
-	 * Calculate the direction of the normal of phi(x, y), which is phi_y /
-	 * phi_x.
-	 * 
-	 * @return A two element array in the order of normal_x and normal_y.
-	 */
-	private double[] calculateNorDir(int x, int y, double[][] phi)
-	{
-		double phi_y, phi_x;
-
-		phi_y = (phi[x][y + 1] - phi[x][y - 1]) / 2;
-		phi_x = (phi[x + 1][y] - phi[x - 1][y]) / 2;
-		double d = Math.sqrt(phi_y * phi_y + phi_x * phi_x);
-		double[] normal = new double[2];
-
-		if (d == 0)
-		{
-			normal[0] = 0;
-			normal[1] = 0;
-
-		} else
-		{
-			normal[0] = phi_x / d;
-			normal[1] = phi_y / d;
-		}
-		return normal;
-	}
-
-	/**
-	 * [New] Calculate the direction of the normal of phi(x, y), which is phi_y
-	 * / phi_x.
-	 * 
-	 * @return A two element array in the order of normal_x and normal_y.
-	 */
-	private Point calculateNormalDirection(int x, int y, double[][] phi)
-	{
-		double phi_y, phi_x;
-
-		phi_y = (phi[x][y + 1] - phi[x][y - 1]) / 2;
-		phi_x = (phi[x + 1][y] - phi[x - 1][y]) / 2;
-		double d = Math.sqrt(phi_y * phi_y + phi_x * phi_x);
-
-		final Point normalDirection = new Point();
-
-		if (d == 0)
-		{
-
-			normalDirection.setLocation(0, 0);
-
-		} else
-		{
-
-			normalDirection.setLocation(phi_x / d, phi_y / d);
-		}
-
-		return normalDirection;
-	}
-
-	/**
-	 * Gets the max value of the array.
-	 * 
-	 * @param array
-	 *            to search max within.
-	 * @return max value of the array.
-	 */
-	private int getMax(Vector<Integer> vector, int depth)
-	{
-		int max = ((Integer) vector.elementAt(0)).intValue();
-		if (vector.size() <= 1)
-		{
-			return max;
-		}
-		if (depth > vector.size())
-		{
-			depth = vector.size();
-		}
-		int temp;
-		for (int i = 1; i < depth; i++)
-		{
-			temp = ((Integer) vector.elementAt(i)).intValue();
-			if (max < temp)
-			{
-				max = temp;
-			}
-		}
-
-		return max;
-	}
-
-	/**
-	 * Gets the min value of the array.
-	 * 
-	 * @param array
-	 *            to search max within.
-	 * @return min value of the array.
-	 */
-	private int getMin(Vector<Integer> vector, int depth)
-	{
-		int min = ((Integer) vector.elementAt(0)).intValue();
-
-		if (vector.size() <= 1)
-		{
-			return min;
-		}
-		if (depth > vector.size())
-		{
-			depth = vector.size();
-		}
-
-		int temp;
-		for (int i = 1; i < depth; i++)
-		{
-			temp = ((Integer) vector.elementAt(i)).intValue();
-			if (min > temp)
-			{
-				min = temp;
-			}
-		}
-
-		return min;
-	}
 }
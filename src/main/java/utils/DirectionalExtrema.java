@@ -0,0 +1,222 @@
+package utils;
+
+/**
+ * Running minimum and maximum of the slice intensities along quantized normal directions. For
+ * each direction the grid is partitioned into digital lines running in that direction, and the
+ * minimum of the first minD samples and the maximum of the first maxD samples starting at every
+ * pixel are computed with the van Herk/Gil-Werman algorithm, i.e. in a constant number of
+ * comparisons per pixel regardless of the probing distance. Since the intensities do not change
+ * during a slice, the fields are built once and the intensity force becomes a table lookup.
+ *
+ * Pixels on the first row and column are excluded as in the probes of {@link Calculator}.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class DirectionalExtrema
+{
+
+	/** The width of the image. */
+	private final int X_DIM;
+
+	/** The height of the image. */
+	private final int Y_DIM;
+
+	/** The number of quantized directions over a full turn. */
+	private final int directions;
+
+	/** Running minimum of each direction in row-major order. */
+	private final short[][] minFields;
+
+	/** Running maximum of each direction in row-major order. */
+	private final short[][] maxFields;
+
+	/** Row-major indices of the pixels of the line being processed, in the order of travel. */
+	private int[] line;
+
+	/** Scratch buffers of the van Herk/Gil-Werman algorithm. */
+	private int[] prefix;
+	private int[] suffix;
+
+	/**
+	 * Build the fields of the given slice.
+	 *
+	 * @param width Width of the 2D image grid.
+	 * @param height Height of the 2D image grid.
+	 * @param directions The number of quantized directions, e.g. 16.
+	 * @param minD The number of samples over which the minimum is taken.
+	 * @param maxD The number of samples over which the maximum is taken.
+	 * @param inputArray Intensities of the slice in row-major order.
+	 */
+	public DirectionalExtrema(int width, int height, int directions, int minD, int maxD,
+			short[] inputArray)
+	{
+		X_DIM = width;
+		Y_DIM = height;
+		this.directions = directions;
+
+		minFields = new short[directions][];
+		maxFields = new short[directions][];
+
+		final int length = Math.max(width, height);
+		final int depth = Math.max(Math.max(minD, maxD), 1);
+		line = new int[length];
+		prefix = new int[length + depth];
+		suffix = new int[length + depth];
+
+		for (int k = 0; k < directions; k++)
+		{
+			minFields[k] = new short[width * height];
+			maxFields[k] = new short[width * height];
+
+			build(k, Math.max(minD, 1), Math.max(maxD, 1), inputArray);
+		}
+
+		// The scratch buffers are only needed while building
+		line = null;
+		prefix = null;
+		suffix = null;
+	}
+
+	/**
+	 * Gets the index of the quantized direction nearest to the given normal.
+	 *
+	 * @param normalX X component of the normal.
+	 * @param normalY Y component of the normal.
+	 * @return Index of the direction.
+	 */
+	public int getDirection(double normalX, double normalY)
+	{
+		final double angle = Math.atan2(normalY, normalX);
+		final int k = (int) Math.floor(angle * directions / (2 * Math.PI) + 0.5);
+
+		return (k + directions) % directions;
+	}
+
+	/**
+	 * Gets the minimum intensity along the direction starting at the pixel.
+	 *
+	 * @param direction Index of the direction.
+	 * @param idx Row-major index of the pixel.
+	 * @return The minimum intensity.
+	 */
+	public int getMin(int direction, int idx)
+	{
+		return minFields[direction][idx];
+	}
+
+	/**
+	 * Gets the maximum intensity along the direction starting at the pixel.
+	 *
+	 * @param direction Index of the direction.
+	 * @param idx Row-major index of the pixel.
+	 * @return The maximum intensity.
+	 */
+	public int getMax(int direction, int idx)
+	{
+		return maxFields[direction][idx];
+	}
+
+	/**
+	 * Build the fields of a direction. The lines follow the major axis of the direction, and the
+	 * pixel of the minor axis is rounded from the line offset, so that every pixel belongs to
+	 * exactly one line.
+	 */
+	private void build(int k, int minD, int maxD, short[] inputArray)
+	{
+		final double angle = 2 * Math.PI * k / directions;
+		final double cos = Math.cos(angle);
+		final double sin = Math.sin(angle);
+		final boolean isXMajor = Math.abs(cos) >= Math.abs(sin);
+
+		// A unit step along the direction advances the major axis by this much
+		final double major = Math.max(Math.abs(cos), Math.abs(sin));
+		final double slope = isXMajor ? sin / cos : cos / sin;
+		final int step = (isXMajor ? cos : sin) > 0 ? 1 : -1;
+
+		// Pixels covered along the major axis by the first D samples
+		final int minWindow = (int) Math.floor((minD - 1) * major + 0.5) + 1;
+		final int maxWindow = (int) Math.floor((maxD - 1) * major + 0.5) + 1;
+
+		final int majorDim = isXMajor ? X_DIM : Y_DIM;
+		final int minorDim = isXMajor ? Y_DIM : X_DIM;
+
+		// Range of the line offsets so that every pixel of the valid region is covered
+		int lowest = Integer.MAX_VALUE;
+		int highest = Integer.MIN_VALUE;
+		for (int m = 1; m < majorDim; m++)
+		{
+			lowest = Math.min(lowest, shift(m, slope));
+			highest = Math.max(highest, shift(m, slope));
+		}
+
+		int n, minor;
+		for (int offset = 1 - highest; offset <= minorDim - 1 - lowest; offset++)
+		{
+			// Collect the pixels of the line in the order of travel
+			n = 0;
+			for (int i = 1; i < majorDim; i++)
+			{
+				final int m = step > 0 ? i : majorDim - i;
+				minor = offset + shift(m, slope);
+
+				if (minor >= 1 && minor < minorDim)
+				{
+					line[n++] = isXMajor ? minor * X_DIM + m : m * X_DIM + minor;
+				}
+			}
+
+			if (n > 0)
+			{
+				runningExtremum(inputArray, n, minWindow, false, minFields[k]);
+				runningExtremum(inputArray, n, maxWindow, true, maxFields[k]);
+			}
+		}
+	}
+
+	/**
+	 * The minor axis shift of the line at the major coordinate.
+	 */
+	private static int shift(int m, double slope)
+	{
+		return (int) Math.floor(m * slope + 0.5);
+	}
+
+	/**
+	 * Van Herk/Gil-Werman running extremum over the forward window of the collected line. The
+	 * line is padded with the neutral element up to a whole number of windows, so that windows
+	 * near the end of the line are truncated.
+	 */
+	private void runningExtremum(short[] inputArray, int n, int window, boolean isMax,
+			short[] field)
+	{
+		final int padded = n + window - 1;
+		final int neutral = isMax ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+		int value;
+		for (int i = 0; i < padded; i++)
+		{
+			value = i < n ? inputArray[line[i]] : neutral;
+			prefix[i] = (i % window == 0) ? value : pick(prefix[i - 1], value, isMax);
+		}
+
+		for (int i = padded - 1; i >= 0; i--)
+		{
+			value = i < n ? inputArray[line[i]] : neutral;
+			suffix[i] =
+					(i % window == window - 1 || i == padded - 1) ? value : pick(suffix[i + 1],
+							value, isMax);
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			field[line[i]] = (short) pick(suffix[i], prefix[i + window - 1], isMax);
+		}
+	}
+
+	private static int pick(int a, int b, boolean isMax)
+	{
+		return isMax ? Math.max(a, b) : Math.min(a, b);
+	}
+
+}
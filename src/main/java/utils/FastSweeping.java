@@ -0,0 +1,287 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Reinitializes phi to a signed distance function with the fast sweeping method (H. Zhao, 2005).
+ * The pixels next to the zero level set are initialized by linear interpolation and frozen, then
+ * the distance of the rest pixels is solved from |grad d| = 1 by four Gauss-Seidel sweeps in
+ * alternating directions. It is O(N), and the working buffers are allocated once per grid.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class FastSweeping
+{
+
+	/** The width of the image. */
+	private final int X_DIM;
+
+	/** The height of the image. */
+	private final int Y_DIM;
+
+	/** Unsigned distance to the zero level set in row-major order. */
+	private final double[] dist;
+
+	/** Whether the distance of a pixel is fixed by the interpolation around the zero level set. */
+	private final boolean[] frozen;
+
+	/** Positions of the first pixel of each row of a tube, reused by the tube sweeps. */
+	private final int[] rowStart;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width Width of the 2D image grid.
+	 * @param height Height of the 2D image grid.
+	 */
+	public FastSweeping(int width, int height)
+	{
+		X_DIM = width;
+		Y_DIM = height;
+
+		dist = new double[width * height];
+		frozen = new boolean[width * height];
+		rowStart = new int[height + 1];
+
+		// Between two reinitializations no pixel has a distance, so that the pixels outside a tube
+		// do not take part in its sweeps
+		Arrays.fill(dist, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Reinitialize phi in place. Each element of the new phi has its value equal to the distance to
+	 * the zero level set curve, and keeps the sign of the old phi. Phi is left unchanged if it has
+	 * no zero level set.
+	 *
+	 * @param phi A Field2D object to be reinitialized.
+	 * @return The reinitialized phi, which is the given object.
+	 */
+	public Field2D reinitialize(Field2D phi)
+	{
+		final double[] phiData = phi.getData();
+
+		boolean hasInterface = false;
+		for (int idx = 0; idx < phiData.length; idx++)
+		{
+			hasInterface |= initializeInterface(phiData, idx);
+		}
+
+		if (!hasInterface)
+		{
+			return phi;
+		}
+
+		sweep(0, X_DIM, 1, 0, Y_DIM, 1);
+		sweep(X_DIM - 1, -1, -1, 0, Y_DIM, 1);
+		sweep(X_DIM - 1, -1, -1, Y_DIM - 1, -1, -1);
+		sweep(0, X_DIM, 1, Y_DIM - 1, -1, -1);
+
+		for (int idx = 0; idx < phiData.length; idx++)
+		{
+			phiData[idx] = phiData[idx] < 0 ? -dist[idx] : dist[idx];
+		}
+
+		Arrays.fill(dist, Double.MAX_VALUE);
+		Arrays.fill(frozen, false);
+
+		return phi;
+	}
+
+	/**
+	 * Reinitialize the given pixels of phi in place, e.g. the tube around a narrow band. The
+	 * pixels outside the tube are neither read as distances nor changed, and the pixels of the
+	 * tube that no distance reaches keep their values.
+	 *
+	 * @param phi A Field2D object to be reinitialized.
+	 * @param tube Indices of the pixels in ascending order.
+	 * @param size The number of pixels.
+	 */
+	public void reinitialize(Field2D phi, int[] tube, int size)
+	{
+		final double[] phiData = phi.getData();
+
+		boolean hasInterface = false;
+		for (int i = 0; i < size; i++)
+		{
+			hasInterface |= initializeInterface(phiData, tube[i]);
+		}
+
+		if (hasInterface)
+		{
+			// The sorted indices of each row are a run, which is swept in either direction
+			int rows = 0;
+			for (int i = 0; i < size; i++)
+			{
+				if (i == 0 || tube[i] / X_DIM != tube[i - 1] / X_DIM)
+				{
+					rowStart[rows++] = i;
+				}
+			}
+			rowStart[rows] = size;
+
+			for (int r = 0; r < rows; r++)
+			{
+				for (int i = rowStart[r]; i < rowStart[r + 1]; i++)
+				{
+					relax(tube[i]);
+				}
+			}
+			for (int r = 0; r < rows; r++)
+			{
+				for (int i = rowStart[r + 1] - 1; i >= rowStart[r]; i--)
+				{
+					relax(tube[i]);
+				}
+			}
+			for (int r = rows - 1; r >= 0; r--)
+			{
+				for (int i = rowStart[r + 1] - 1; i >= rowStart[r]; i--)
+				{
+					relax(tube[i]);
+				}
+			}
+			for (int r = rows - 1; r >= 0; r--)
+			{
+				for (int i = rowStart[r]; i < rowStart[r + 1]; i++)
+				{
+					relax(tube[i]);
+				}
+			}
+		}
+
+		int idx;
+		for (int i = 0; i < size; i++)
+		{
+			idx = tube[i];
+			if (dist[idx] < Double.MAX_VALUE)
+			{
+				phiData[idx] = phiData[idx] < 0 ? -dist[idx] : dist[idx];
+			}
+
+			dist[idx] = Double.MAX_VALUE;
+			frozen[idx] = false;
+		}
+	}
+
+	/**
+	 * Calculate the distance of the pixel if its 4-neighbours lie on the other side of the zero
+	 * level set.
+	 *
+	 * @return True if the pixel lies on the zero level set; false otherwise.
+	 */
+	private boolean initializeInterface(double[] phi, int idx)
+	{
+		final int x = idx % X_DIM;
+		final int y = idx / X_DIM;
+		final double value = phi[idx];
+
+		if (value == 0)
+		{
+			dist[idx] = 0;
+			frozen[idx] = true;
+			return true;
+		}
+
+		double dx = Double.MAX_VALUE;
+		if (x > 0)
+		{
+			dx = Math.min(dx, crossing(value, phi[idx - 1]));
+		}
+		if (x < X_DIM - 1)
+		{
+			dx = Math.min(dx, crossing(value, phi[idx + 1]));
+		}
+
+		double dy = Double.MAX_VALUE;
+		if (y > 0)
+		{
+			dy = Math.min(dy, crossing(value, phi[idx - X_DIM]));
+		}
+		if (y < Y_DIM - 1)
+		{
+			dy = Math.min(dy, crossing(value, phi[idx + X_DIM]));
+		}
+
+		if (dx < Double.MAX_VALUE && dy < Double.MAX_VALUE)
+		{
+			dist[idx] = dx * dy / Math.sqrt(dx * dx + dy * dy);
+		} else if (dx < Double.MAX_VALUE || dy < Double.MAX_VALUE)
+		{
+			dist[idx] = Math.min(dx, dy);
+		} else
+		{
+			return false;
+		}
+
+		frozen[idx] = true;
+		return true;
+	}
+
+	/**
+	 * Distance from a pixel of the value to the zero crossing between it and its neighbour, or
+	 * Double.MAX_VALUE if there is no crossing.
+	 */
+	private double crossing(double value, double neighbour)
+	{
+		if ((value > 0 && neighbour > 0) || (value < 0 && neighbour < 0))
+		{
+			return Double.MAX_VALUE;
+		}
+
+		return value / (value - neighbour);
+	}
+
+	/**
+	 * One Gauss-Seidel sweep over the grid in the given order.
+	 */
+	private void sweep(int xStart, int xEnd, int xStep, int yStart, int yEnd, int yStep)
+	{
+		for (int y = yStart; y != yEnd; y += yStep)
+		{
+			for (int x = xStart; x != xEnd; x += xStep)
+			{
+				relax(y * X_DIM + x);
+			}
+		}
+	}
+
+	/**
+	 * Solve the discretized eikonal equation at the pixel unless it is frozen.
+	 */
+	private void relax(int idx)
+	{
+		if (frozen[idx])
+		{
+			return;
+		}
+
+		final int x = idx % X_DIM;
+		final int y = idx / X_DIM;
+
+		final double a = Math.min(x > 0 ? dist[idx - 1] : Double.MAX_VALUE,
+				x < X_DIM - 1 ? dist[idx + 1] : Double.MAX_VALUE);
+		final double b = Math.min(y > 0 ? dist[idx - X_DIM] : Double.MAX_VALUE,
+				y < Y_DIM - 1 ? dist[idx + X_DIM] : Double.MAX_VALUE);
+
+		if (a == Double.MAX_VALUE && b == Double.MAX_VALUE)
+		{
+			return;
+		}
+
+		final double d;
+		if (Math.abs(a - b) >= 1)
+		{
+			d = Math.min(a, b) + 1;
+		} else
+		{
+			d = (a + b + Math.sqrt(2 - (a - b) * (a - b))) / 2;
+		}
+
+		if (d < dist[idx])
+		{
+			dist[idx] = d;
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A 2D grid of double values stored row by row in a single contiguous array. The value of pixel
+ * (x, y) lies at index y * width + x, so the neighbours of an index are idx +/- 1 in x and
+ * idx +/- width in y.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class Field2D
+{
+
+	/** The width of the grid, which is also the stride of a row. */
+	private final int width;
+
+	/** The height of the grid. */
+	private final int height;
+
+	/** Values of the grid in row-major order. */
+	private final double[] data;
+
+	/**
+	 * Create a grid filled with zeros.
+	 *
+	 * @param width Width of the grid.
+	 * @param height Height of the grid.
+	 */
+	public Field2D(int width, int height)
+	{
+		this(width, height, new double[width * height]);
+	}
+
+	/**
+	 * Wrap a row-major array as a grid without copying it.
+	 *
+	 * @param width Width of the grid.
+	 * @param height Height of the grid.
+	 * @param data Values of the grid in row-major order.
+	 */
+	public Field2D(int width, int height, double[] data)
+	{
+		if (data.length != width * height)
+		{
+			throw new IllegalArgumentException("Field2D: " + data.length + " values do not fit a "
+					+ width + "x" + height + " grid.");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.data = data;
+	}
+
+	/**
+	 * Create a grid from an array indexed as [x][y].
+	 *
+	 * @param array A double array.
+	 * @return A new grid.
+	 */
+	public static Field2D fromArray(double[][] array)
+	{
+		final int width = array.length;
+		final int height = array[0].length;
+		final double[] data = new double[width * height];
+
+		for (int x = 0; x < width; x++)
+		{
+			final double[] column = array[x];
+
+			for (int y = 0, idx = x; y < height; y++, idx += width)
+			{
+				data[idx] = column[y];
+			}
+		}
+
+		return new Field2D(width, height, data);
+	}
+
+	/**
+	 * Convert the grid to an array indexed as [x][y].
+	 *
+	 * @return A double array.
+	 */
+	public double[][] toArray()
+	{
+		final double[][] array = new double[width][height];
+
+		for (int y = 0, idx = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++, idx++)
+			{
+				array[x][y] = data[idx];
+			}
+		}
+
+		return array;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Gets the backing array in row-major order.
+	 *
+	 * @return The backing array, not a copy.
+	 */
+	public double[] getData()
+	{
+		return data;
+	}
+
+	public int index(int x, int y)
+	{
+		return y * width + x;
+	}
+
+	public double get(int x, int y)
+	{
+		return data[y * width + x];
+	}
+
+	public void set(int x, int y, double value)
+	{
+		data[y * width + x] = value;
+	}
+
+	/**
+	 * Set every value of the grid.
+	 *
+	 * @param value The value to set.
+	 */
+	public void fill(double value)
+	{
+		Arrays.fill(data, value);
+	}
+
+	/**
+	 * Copy the values of another grid of the same size into this grid.
+	 *
+	 * @param field The grid to copy from.
+	 */
+	public void copyFrom(Field2D field)
+	{
+		System.arraycopy(field.data, 0, data, 0, data.length);
+	}
+
+	/**
+	 * Create a deep copy of the grid.
+	 *
+	 * @return A new grid.
+	 */
+	public Field2D copy()
+	{
+		return new Field2D(width, height, Arrays.copyOf(data, data.length));
+	}
+
+}
@@ -26,6 +26,30 @@ public class LSConstants
 		}
 	}
 
+	public enum ReinitMethod
+	{
+		Sussman("Sussman"), FastSweeping("Fast Sweeping");
+
+		String methodName;
+
+		private ReinitMethod(String methodName)
+		{
+			this.methodName = methodName;
+		}
+	}
+
+	public enum HoleFillingMethod
+	{
+		Ray("Ray"), Scanline("Scanline"), Volumetric("Volumetric");
+
+		String methodName;
+
+		private HoleFillingMethod(String methodName)
+		{
+			this.methodName = methodName;
+		}
+	}
+
 	public enum MedImageFormat
 	{
 		MincMRI("MINC MRI"), Analyze75("Analyze 7.5");
@@ -54,6 +78,9 @@ public class LSConstants
 
 	public static final String ERROR_GROUND_TRUTH_NOT_FOUND = "Ground truth not found error";
 
+	public static final String ERROR_GROUND_TRUTH_MISMATCH =
+			"Ground truth does not match the size of the volume";
+
 	public static final String ERROR_OPEN_IMAGE = "Open image error";
 
 	public static final String ERROR_CREATE_RESULT_DIR = "Create result directory error";
@@ -16,8 +16,6 @@ import java.awt.Point;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
@@ -304,6 +302,44 @@ public class LSUtil
 		return contouredImage;
 	}
 
+	/**
+	 * Lay the contour of a mask on a copy of the image.
+	 * 
+	 * @param image A BufferedImage object.
+	 * @param mask The mask of the same size as the image.
+	 * @param contourColor Color of the contour.
+	 * @return A new BufferedImage object.
+	 */
+	public static BufferedImage layContourOnImage(BufferedImage image, BitMask2D mask,
+			Color contourColor)
+	{
+		BufferedImage contouredImage =
+				new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+
+		if (mask == null)
+		{
+			return contouredImage;
+		}
+
+		final BitMask2D contour = mask.findContour();
+
+		for (int x = 10; x < mask.getWidth() - 10; x++)
+		{
+			for (int y = 10; y < mask.getHeight() - 10; y++)
+			{
+				if (contour.get(x, y))
+				{
+					contouredImage.setRGB(x, y, contourColor.getRGB());
+				} else
+				{
+					contouredImage.setRGB(x, y, image.getRGB(x, y));
+				}
+			}
+		}
+
+		return contouredImage;
+	}
+
 	public static BufferedImage convertGrayToRGB(BufferedImage grayImage)
 	{
 		final BufferedImage colorImage =
@@ -391,6 +427,29 @@ public class LSUtil
 		return boolList;
 	}
 
+	/**
+	 * Converts a level set grid to a boolean mask indexed as [x][y].
+	 * 
+	 * @param result A Field2D object.
+	 * @param value Elements not less than the value are true.
+	 * @return A boolean array.
+	 */
+	public static boolean[][] convertBoolAry(Field2D result, double value)
+	{
+		final boolean[][] resultBool = new boolean[result.getWidth()][result.getHeight()];
+		final double[] data = result.getData();
+
+		for (int y = 0, idx = 0; y < result.getHeight(); y++)
+		{
+			for (int x = 0; x < result.getWidth(); x++, idx++)
+			{
+				resultBool[x][y] = data[idx] >= value;
+			}
+		}
+
+		return resultBool;
+	}
+
 	public static double[][] copy2DAry(double[][] ary)
 	{
 		final double[][] newAry = new double[ary.length][ary[0].length];
@@ -433,6 +492,28 @@ public class LSUtil
 		return maskArea;
 	}
 
+	/**
+	 * Calculate mask area of a level set grid based on the specified threshold
+	 * 
+	 * @param img
+	 * @param threshold
+	 * @return
+	 */
+	public static int calculateMaskArea(Field2D img, double threshold)
+	{
+		int maskArea = 0;
+
+		for (double value : img.getData())
+		{
+			if (value >= threshold)
+			{
+				maskArea++;
+			}
+		}
+
+		return maskArea;
+	}
+
 	/**
 	 * Converts a level set array to a binary mask. All positive elements in the level set array
 	 * will be set as a unique positive value, and all negative elements will be set as 0.
@@ -461,6 +542,60 @@ public class LSUtil
 
 	}
 
+	/**
+	 * Converts a level set grid to a binary mask indexed as [x][y]. All elements not less than the
+	 * threshold will be set as white, and all other elements will be set as 0.
+	 * 
+	 * @param img A Field2D object.
+	 * @return A byte, binary array.
+	 */
+	public static byte[][] convertToBinaryAry(Field2D img, double threshold, byte white)
+	{
+		final byte[][] outputArray = new byte[img.getWidth()][img.getHeight()];
+		final double[] data = img.getData();
+
+		for (int y = 0, idx = 0; y < img.getHeight(); y++)
+		{
+			for (int x = 0; x < img.getWidth(); x++, idx++)
+			{
+				if (data[idx] >= threshold)
+				{
+					outputArray[x][y] = white;
+				}
+			}
+		}
+
+		return outputArray;
+	}
+
+	/**
+	 * Calculate the length of the zero level set.
+	 * 
+	 * @param img A Field2D object.
+	 * @return The number of pixels on the boundary of the mask.
+	 */
+	public static int calculateContourLength(Field2D img, double threshold, byte white)
+	{
+		int length = 0;
+		final byte[][] byteArray = convertToBinaryAry(img, threshold, white);
+		long tempLong;
+
+		for (int x = 1; x < img.getWidth() - 1; x++)
+		{
+			for (int y = 1; y < img.getHeight() - 1; y++)
+			{
+				tempLong =
+						4 * byteArray[x][y] - byteArray[x - 1][y] - byteArray[x + 1][y]
+								- byteArray[x][y - 1] - byteArray[x][y + 1];
+				if (tempLong > 0)
+				{
+					length++;
+				}
+			}
+		}
+		return length;
+	}
+
 	/**
 	 * Calculate the length of the zero level set.
 	 * 
@@ -494,14 +629,11 @@ public class LSUtil
 	{
 		int max = Integer.MIN_VALUE;
 
-		for (int x = 0; x < image.getWidth(); x++)
+		for (int value : PixelAccess.getSamples(image, null))
 		{
-			for (int y = 0; y < image.getHeight(); y++)
+			if (value > max)
 			{
-				if (image.getRaster().getSample(x, y, 0) > max)
-				{
-					max = image.getRaster().getSample(x, y, 0);
-				}
+				max = value;
 			}
 		}
 
@@ -512,14 +644,11 @@ public class LSUtil
 	{
 		int min = Integer.MAX_VALUE;
 
-		for (int x = 0; x < image.getWidth(); x++)
+		for (int value : PixelAccess.getSamples(image, null))
 		{
-			for (int y = 0; y < image.getHeight(); y++)
+			if (value < min)
 			{
-				if (image.getRaster().getSample(x, y, 0) < min)
-				{
-					min = image.getRaster().getSample(x, y, 0);
-				}
+				min = value;
 			}
 		}
 
@@ -560,15 +689,18 @@ public class LSUtil
 	{
 		final List<double[][]> doubleList = new ArrayList<double[][]>();
 
+		int[] samples = null;
 		for (BufferedImage buffImage : bufferedImage)
 		{
-			double[][] doubleImg = new double[buffImage.getWidth()][buffImage.getHeight()];
+			final int width = buffImage.getWidth();
+			double[][] doubleImg = new double[width][buffImage.getHeight()];
 
-			for (int x = 0; x < buffImage.getWidth(); x++)
+			samples = PixelAccess.getSamples(buffImage, samples);
+			for (int y = 0, idx = 0; y < buffImage.getHeight(); y++)
 			{
-				for (int y = 0; y < buffImage.getHeight(); y++)
+				for (int x = 0; x < width; x++, idx++)
 				{
-					doubleImg[x][y] = buffImage.getRaster().getSample(x, y, 0);
+					doubleImg[x][y] = samples[idx];
 				}
 			}
 
@@ -597,6 +729,46 @@ public class LSUtil
 		return convertBuffToDouble(buffList);
 	}
 
+	/**
+	 * Converts the slices of an image, e.g. a ground truth, to a packed volume, straight from the
+	 * samples of each slice. The current slice of imgPlus is changed.
+	 * 
+	 * @param imgPlus An ImagePlus object.
+	 * @param threshold Samples not less than the threshold are set.
+	 * @return A mask volume whose planes are the slices.
+	 */
+	public static BitMask3D convertImgPlusToBitMask3D(ImagePlus imgPlus, int threshold)
+	{
+		final BitMask3D mask =
+				new BitMask3D(imgPlus.getWidth(), imgPlus.getHeight(), imgPlus.getStackSize());
+
+		for (int i = 1; i <= imgPlus.getStackSize(); i++)
+		{
+			mask.setSection(i - 1, 0, convertSliceToBitMask(imgPlus, i, threshold));
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Converts a slice of an image, e.g. a ground truth, to a packed mask. The current slice of
+	 * imgPlus is changed.
+	 * 
+	 * @param imgPlus An ImagePlus object.
+	 * @param sliceNo Index of the slice, starting from 1.
+	 * @param threshold Samples not less than the threshold are set.
+	 * @return A mask.
+	 */
+	public static BitMask2D convertSliceToBitMask(ImagePlus imgPlus, int sliceNo, int threshold)
+	{
+		imgPlus.setSlice(sliceNo);
+
+		final BufferedImage buffImage = imgPlus.getBufferedImage();
+
+		return BitMask2D.fromSamples(PixelAccess.getSamples(buffImage, null),
+				buffImage.getWidth(), buffImage.getHeight(), threshold);
+	}
+
 	public static String convertDoubleToStr(double number)
 	{
 
@@ -668,23 +840,15 @@ public class LSUtil
 	 */
 	public static short[][] createShortAry(BufferedImage bImg)
 	{
-		// Get the raster of the bImg
-		Raster raster = bImg.getRaster();
-		int xOffset = 0;
-		int yOffset = 0;
-		short[][] array = new short[bImg.getWidth()][bImg.getHeight()];
+		final int[] samples = PixelAccess.getSamples(bImg, null);
+		final int width = bImg.getWidth();
+		short[][] array = new short[width][bImg.getHeight()];
 
-		// Offset to get the interesting region, set manually
-		int tempInt;
-		for (int y = 0; y < bImg.getHeight(); y++)
+		for (int y = 0, idx = 0; y < bImg.getHeight(); y++)
 		{
-			for (int x = 0; x < bImg.getWidth(); x++)
+			for (int x = 0; x < width; x++, idx++)
 			{
-				tempInt = raster.getSample(x + xOffset, y + yOffset, 0);
-
-				tempInt &= 0xffff;
-				array[x][y] = (short) tempInt;
-
+				array[x][y] = (short) samples[idx];
 			}
 		}
 		return array;
@@ -694,20 +858,18 @@ public class LSUtil
 	{
 		double[] maxSeries = new double[buffImages.size()];
 
+		int[] samples = null;
 		for (int i = 0; i < buffImages.size(); i++)
 		{
-			BufferedImage currentImg = buffImages.get(i);
-			Raster raster = currentImg.getRaster();
+			samples = PixelAccess.getSamples(buffImages.get(i), samples);
+			final int size = buffImages.get(i).getWidth() * buffImages.get(i).getHeight();
 			double max = 0;
 
-			for (int y = 0; y < currentImg.getHeight(); y++)
+			for (int idx = 0; idx < size; idx++)
 			{
-				for (int x = 0; x < currentImg.getWidth(); x++)
+				if (samples[idx] > max)
 				{
-					if (raster.getSample(x, y, 0) > max)
-					{
-						max = raster.getSample(x, y, 0);
-					}
+					max = samples[idx];
 				}
 			}
 
@@ -782,40 +944,33 @@ public class LSUtil
 		final int width = bufferedImage.getWidth();
 
 		final BufferedImage scaledImage = new BufferedImage(width, height, bufferedImage.getType());
-		final WritableRaster outRaster = scaledImage.getRaster();
-		final WritableRaster inRaster = bufferedImage.getRaster();
+		final int[] samples = PixelAccess.getSamples(bufferedImage, null);
 
 		int imageMin = 0;
 		int imageMax = 0;
 
-		for (int y = 0; y < height; y++)
+		for (int value : samples)
 		{
-			for (int x = 0; x < width; x++)
+			if (value < imageMin)
 			{
-				int value = inRaster.getSample(x, y, 0);
-
-				if (value < imageMin)
-				{
-					imageMin = value;
-				}
+				imageMin = value;
+			}
 
-				if (value > imageMax)
-				{
-					imageMax = value;
-				}
+			if (value > imageMax)
+			{
+				imageMax = value;
 			}
 		}
 
-		for (int y = 0; y < height; y++)
+		for (int idx = 0; idx < samples.length; idx++)
 		{
-			for (int x = 0; x < width; x++)
-			{
-				outRaster.setSample(x, y, 0, min
-						+ (double) (inRaster.getSample(x, y, 0) - imageMin) / (imageMax - imageMin)
-						* (max - min));
-			}
+			samples[idx] =
+					(int) (min + (double) (samples[idx] - imageMin) / (imageMax - imageMin)
+							* (max - min));
 		}
 
+		PixelAccess.setSamples(scaledImage, samples);
+
 		return scaledImage;
 
 	}
@@ -824,16 +979,12 @@ public class LSUtil
 	{
 		boolean withinRange = true;
 
-		for (int y = 0; y < image.getHeight(); y++)
+		for (int value : PixelAccess.getSamples(image, null))
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			if (value < lowerBound || value > upperBound)
 			{
-				int val = image.getRaster().getSample(x, y, 0);
-
-				if (val < lowerBound || val > upperBound)
-				{
-					withinRange = false;
-				}
+				withinRange = false;
+				break;
 			}
 		}
 
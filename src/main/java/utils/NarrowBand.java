@@ -0,0 +1,296 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Active pixels of the narrow band around the zero level set. A pixel belongs to the band when
+ * delta_epsilon of its phi value is positive, i.e. |phi| < 1.5h. The row-major indices of the
+ * pixels and their delta_epsilon are kept in primitive arrays so that the per-iteration kernels of
+ * {@link Calculator} only touch the band instead of the whole grid.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class NarrowBand
+{
+
+	/** Number of incremental updates between two full rebuilds of the band. */
+	private static final int REBUILD_PERIOD = 16;
+
+	/**
+	 * Chebyshev distance, in pixels, from the last band within which new band pixels are searched.
+	 * After reinitialization the front may move by up to about 1.5 pixels per iteration.
+	 */
+	private static final int REACH = 2;
+
+	/**
+	 * Chebyshev distance, in pixels, from the band within which phi is reinitialized. It is one
+	 * more than REACH, so every pixel that the next update may add to the band, as well as its
+	 * neighbours read by the kernels, has been reinitialized.
+	 */
+	private static final int TUBE_REACH = REACH + 1;
+
+	/** Initial capacity of the index arrays. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** The width of the image. */
+	private final int X_DIM;
+
+	/** The height of the image. */
+	private final int Y_DIM;
+
+	/** Half width of the band, which is epsilon of delta_epsilon. */
+	private final double eps;
+
+	/** Indices of the pixels in the band. */
+	private int[] bandIdx = new int[INITIAL_CAPACITY];
+
+	/** delta_epsilon of the pixels in the band. */
+	private double[] bandDelta = new double[INITIAL_CAPACITY];
+
+	/** The number of pixels in the band. */
+	private int size = 0;
+
+	/** Indices of the pixels in the band before the last update. */
+	private int[] prevIdx = new int[INITIAL_CAPACITY];
+
+	/** The number of pixels in the band before the last update. */
+	private int prevSize = 0;
+
+	/** Indices of the pixels of the tube around the band, in ascending order. */
+	private int[] tubeIdx = new int[INITIAL_CAPACITY];
+
+	/** The number of pixels in the tube. */
+	private int tubeSize = 0;
+
+	/** Stamp of the update in which a pixel was last visited. */
+	private final int[] visited;
+
+	/** Stamp of the current update. */
+	private int stamp = 0;
+
+	/** Incremental updates since the last full rebuild. */
+	private int updateCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param width Width of the 2D image grid.
+	 * @param height Height of the 2D image grid.
+	 * @param eps Half width of the band.
+	 */
+	public NarrowBand(int width, int height, double eps)
+	{
+		X_DIM = width;
+		Y_DIM = height;
+		this.eps = eps;
+
+		visited = new int[width * height];
+	}
+
+	/**
+	 * Empty the band so that the next {@link #update(Field2D)} rebuilds it from the whole grid.
+	 */
+	public void clear()
+	{
+		size = 0;
+		prevSize = 0;
+	}
+
+	/**
+	 * Rebuild the band by scanning the whole grid.
+	 *
+	 * @param phi A Field2D object.
+	 */
+	public void rebuild(Field2D phi)
+	{
+		swap();
+
+		final double[] phiData = phi.getData();
+
+		for (int idx = 0; idx < phiData.length; idx++)
+		{
+			addIfActive(idx, phiData[idx]);
+		}
+
+		updateCount = 0;
+	}
+
+	/**
+	 * Move the band along with the zero level set. Since the front moves less than REACH pixels per
+	 * iteration, only the pixels within REACH of the last band are examined. The band is rebuilt
+	 * from the whole grid when it is empty and periodically as a safeguard.
+	 *
+	 * @param phi A Field2D object.
+	 */
+	public void update(Field2D phi)
+	{
+		if (size == 0 || updateCount >= REBUILD_PERIOD)
+		{
+			rebuild(phi);
+			return;
+		}
+
+		swap();
+
+		nextStamp();
+
+		final double[] phiData = phi.getData();
+
+		int x, y, x0, x1, idx;
+		for (int i = 0; i < prevSize; i++)
+		{
+			x = prevIdx[i] % X_DIM;
+			y = prevIdx[i] / X_DIM;
+
+			x0 = Math.max(x - REACH, 0);
+			x1 = Math.min(x + REACH, X_DIM - 1);
+
+			for (int ny = Math.max(y - REACH, 0); ny <= Math.min(y + REACH, Y_DIM - 1); ny++)
+			{
+				for (idx = ny * X_DIM + x0; idx <= ny * X_DIM + x1; idx++)
+				{
+					if (visited[idx] != stamp)
+					{
+						visited[idx] = stamp;
+						addIfActive(idx, phiData[idx]);
+					}
+				}
+			}
+		}
+
+		updateCount++;
+	}
+
+	/**
+	 * Collect the tube of pixels within TUBE_REACH of the current band, to which the
+	 * reinitialization of the band mode is restricted. The pixels are sorted in row-major order,
+	 * so that the tube can be swept row by row.
+	 */
+	public void buildTube()
+	{
+		nextStamp();
+
+		tubeSize = 0;
+
+		int x, y, x0, x1, idx;
+		for (int i = 0; i < size; i++)
+		{
+			x = bandIdx[i] % X_DIM;
+			y = bandIdx[i] / X_DIM;
+
+			x0 = Math.max(x - TUBE_REACH, 0);
+			x1 = Math.min(x + TUBE_REACH, X_DIM - 1);
+
+			for (int ny = Math.max(y - TUBE_REACH, 0); ny <= Math.min(y + TUBE_REACH, Y_DIM - 1); ny++)
+			{
+				for (idx = ny * X_DIM + x0; idx <= ny * X_DIM + x1; idx++)
+				{
+					if (visited[idx] != stamp)
+					{
+						visited[idx] = stamp;
+
+						if (tubeSize == tubeIdx.length)
+						{
+							tubeIdx = Arrays.copyOf(tubeIdx, tubeIdx.length * 2);
+						}
+						tubeIdx[tubeSize++] = idx;
+					}
+				}
+			}
+		}
+
+		Arrays.sort(tubeIdx, 0, tubeSize);
+	}
+
+	public int tubeSize()
+	{
+		return tubeSize;
+	}
+
+	/**
+	 * Gets the indices of the tube built by {@link #buildTube()}.
+	 * 
+	 * @return The internal array, whose first {@link #tubeSize()} elements are valid.
+	 */
+	public int[] getTubeIndices()
+	{
+		return tubeIdx;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getIndex(int i)
+	{
+		return bandIdx[i];
+	}
+
+	public double getDelta(int i)
+	{
+		return bandDelta[i];
+	}
+
+	/**
+	 * Start a new stamp of the visited pixels.
+	 */
+	private void nextStamp()
+	{
+		if (++stamp == 0)
+		{
+			Arrays.fill(visited, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * Keep the current band as the previous one and empty the current band.
+	 */
+	private void swap()
+	{
+		int[] temp = prevIdx;
+		prevIdx = bandIdx;
+		bandIdx = temp;
+
+		prevSize = size;
+		size = 0;
+	}
+
+	/**
+	 * Add the pixel to the band if its delta_epsilon is positive. Equation 2.16
+	 */
+	private void addIfActive(int idx, double var)
+	{
+		if (var < eps && var > (-eps))
+		{
+			double delta = (1 + Math.cos(Math.PI * var / eps)) / (2 * eps);
+
+			if (delta > 0)
+			{
+				if (size == bandIdx.length)
+				{
+					grow();
+				}
+
+				bandIdx[size] = idx;
+				bandDelta[size] = delta;
+				size++;
+			}
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = bandIdx.length * 2;
+
+		bandIdx = Arrays.copyOf(bandIdx, capacity);
+
+		if (bandDelta.length < capacity)
+		{
+			bandDelta = Arrays.copyOf(bandDelta, capacity);
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Bulk access to the samples of the first band of an image. Gray images keep their samples in a
+ * primitive array of a DataBufferUShort or DataBufferByte, which is read or written directly
+ * instead of one Raster.getSample call per pixel. Images backed by a {@link BulkDataBuffer} fill
+ * the samples themselves, and any other image falls back to a single Raster.getSamples call.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class PixelAccess
+{
+
+	/**
+	 * A DataBuffer that can fill the samples of its image at once, e.g. a view of a volume.
+	 */
+	public abstract static class BulkDataBuffer extends DataBuffer
+	{
+		protected BulkDataBuffer(int dataType, int size)
+		{
+			super(dataType, size);
+		}
+
+		/**
+		 * Fill the samples of the image in row-major order.
+		 *
+		 * @param samples Array of at least the size of the image.
+		 */
+		public abstract void readSamples(int[] samples);
+	}
+
+	private PixelAccess()
+	{
+
+	}
+
+	/**
+	 * Gets the samples of the first band in row-major order, i.e. the sample of (x, y) lies at
+	 * index y * width + x.
+	 *
+	 * @param image A BufferedImage object.
+	 * @param samples Array to receive the samples, or null to allocate one.
+	 * @return The array of the samples.
+	 */
+	public static int[] getSamples(BufferedImage image, int[] samples)
+	{
+		final Raster raster = image.getRaster();
+		final int width = raster.getWidth();
+		final int height = raster.getHeight();
+
+		if (samples == null || samples.length < width * height)
+		{
+			samples = new int[width * height];
+		}
+
+		final DataBuffer dataBuffer = raster.getDataBuffer();
+
+		if (dataBuffer instanceof BulkDataBuffer)
+		{
+			((BulkDataBuffer) dataBuffer).readSamples(samples);
+			return samples;
+		}
+
+		final ComponentSampleModel sampleModel = getDirectSampleModel(raster);
+
+		if (sampleModel == null)
+		{
+			return raster.getSamples(0, 0, width, height, 0, samples);
+		}
+
+		final int stride = sampleModel.getScanlineStride();
+		final int start = dataBuffer.getOffset() + sampleModel.getBandOffsets()[0];
+
+		if (dataBuffer instanceof DataBufferUShort)
+		{
+			final short[] data = ((DataBufferUShort) dataBuffer).getData();
+			for (int y = 0, idx = 0; y < height; y++)
+			{
+				for (int src = start + y * stride, end = src + width; src < end; src++, idx++)
+				{
+					samples[idx] = data[src] & 0xffff;
+				}
+			}
+		} else if (dataBuffer instanceof DataBufferByte)
+		{
+			final byte[] data = ((DataBufferByte) dataBuffer).getData();
+			for (int y = 0, idx = 0; y < height; y++)
+			{
+				for (int src = start + y * stride, end = src + width; src < end; src++, idx++)
+				{
+					samples[idx] = data[src] & 0xff;
+				}
+			}
+		} else
+		{
+			final short[] data = ((DataBufferShort) dataBuffer).getData();
+			for (int y = 0, idx = 0; y < height; y++)
+			{
+				for (int src = start + y * stride, end = src + width; src < end; src++, idx++)
+				{
+					samples[idx] = data[src];
+				}
+			}
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Sets the samples of the first band in row-major order. The samples are stored as by
+	 * Raster.setSample, i.e. truncated to the bits of the data type.
+	 *
+	 * @param image A BufferedImage object.
+	 * @param samples The samples of at least the size of the image.
+	 */
+	public static void setSamples(BufferedImage image, int[] samples)
+	{
+		final WritableRaster raster = image.getRaster();
+		final int width = raster.getWidth();
+		final int height = raster.getHeight();
+
+		final ComponentSampleModel sampleModel = getDirectSampleModel(raster);
+		final DataBuffer dataBuffer = raster.getDataBuffer();
+
+		if (sampleModel == null || dataBuffer instanceof BulkDataBuffer)
+		{
+			raster.setSamples(0, 0, width, height, 0, samples);
+			return;
+		}
+
+		final int stride = sampleModel.getScanlineStride();
+		final int start = dataBuffer.getOffset() + sampleModel.getBandOffsets()[0];
+
+		if (dataBuffer instanceof DataBufferByte)
+		{
+			final byte[] data = ((DataBufferByte) dataBuffer).getData();
+			for (int y = 0, idx = 0; y < height; y++)
+			{
+				for (int dst = start + y * stride, end = dst + width; dst < end; dst++, idx++)
+				{
+					data[dst] = (byte) samples[idx];
+				}
+			}
+		} else
+		{
+			final short[] data =
+					dataBuffer instanceof DataBufferUShort ? ((DataBufferUShort) dataBuffer)
+							.getData() : ((DataBufferShort) dataBuffer).getData();
+			for (int y = 0, idx = 0; y < height; y++)
+			{
+				for (int dst = start + y * stride, end = dst + width; dst < end; dst++, idx++)
+				{
+					data[dst] = (short) samples[idx];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the sample model if the first band can be addressed directly in the primitive array of
+	 * the data buffer; null otherwise.
+	 */
+	private static ComponentSampleModel getDirectSampleModel(Raster raster)
+	{
+		final SampleModel sampleModel = raster.getSampleModel();
+		final DataBuffer dataBuffer = raster.getDataBuffer();
+
+		if (!(sampleModel instanceof ComponentSampleModel) || raster.getParent() != null
+				|| raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+				|| dataBuffer.getNumBanks() != 1)
+		{
+			return null;
+		}
+
+		if (!(dataBuffer instanceof DataBufferUShort) && !(dataBuffer instanceof DataBufferByte)
+				&& !(dataBuffer instanceof DataBufferShort))
+		{
+			return null;
+		}
+
+		final ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+
+		return componentModel.getPixelStride() == 1 && componentModel.getNumBands() == 1 ? componentModel
+				: null;
+	}
+
+}
@@ -0,0 +1,267 @@
+package view;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import utils.Field2D;
+import utils.LSUtil;
+
+/**
+ * Live preview of the evolving contour. The evolution only publishes its latest phi, and a
+ * renderer thread samples it at a fixed frame rate, lays the zero level set on the slice in one
+ * of two reused RGB buffers and shows it on the window. The evolution therefore never waits for
+ * the rendering, and phi published between two frames is simply skipped. A frame is drawn only
+ * once the window has taken the previous one, into the buffer the window no longer shows.
+ *
+ * @author Vincent Liu
+ *
+ */
+public class ContourPreview
+{
+
+	/** Cut off boundary value of phi. */
+	private static final double BOUNDARY_VALUE = -0.5;
+
+	/**
+	 * The slice to lay the contour on, converted to RGB once per evolution.
+	 */
+	public static class Slice
+	{
+		private final int width;
+
+		private final int height;
+
+		private final int[] rgb;
+
+		private final int contourRGB;
+
+		private Slice(BufferedImage grayImage, Color contourColor)
+		{
+			width = grayImage.getWidth();
+			height = grayImage.getHeight();
+			rgb = new int[width * height];
+			contourRGB = contourColor.getRGB() & 0xffffff;
+
+			LSUtil.convertGrayToRGB(grayImage).getRGB(0, 0, width, height, rgb, 0, width);
+		}
+	}
+
+	private final CustomWindow customWindow;
+
+	/** Time between two frames in milliseconds. */
+	private final long period;
+
+	/** The slice and phi published by the evolution, guarded by this. */
+	private Slice slice;
+	private Field2D phi;
+
+	/** The phi of the last rendered frame. */
+	private volatile Field2D renderedPhi;
+
+	/** The RGB buffers the frames alternate between. */
+	private final BufferedImage[] images = new BufferedImage[2];
+
+	/** Index of the buffer of the next frame. */
+	private int nextImage = 0;
+
+	/** The number of frames handed to the event dispatch thread but not yet shown. */
+	private final AtomicInteger pendingFrames = new AtomicInteger();
+
+	private ScheduledExecutorService renderer;
+
+	/** Guards the frames, which may be rendered by both the renderer and {@link #stop()}. */
+	private final Object renderLock = new Object();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param customWindow The window to show the preview on.
+	 * @param fps Frames per second.
+	 */
+	public ContourPreview(CustomWindow customWindow, double fps)
+	{
+		this.customWindow = customWindow;
+		this.period = Math.max((long) (1000 / fps), 1);
+	}
+
+	/**
+	 * Start rendering.
+	 */
+	public synchronized void start()
+	{
+		if (renderer != null)
+		{
+			return;
+		}
+
+		renderer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				final Thread thread = new Thread(runnable, "Contour preview");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		renderer.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				render(false);
+			}
+		}, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop rendering after showing the last published phi.
+	 */
+	public void stop()
+	{
+		final ScheduledExecutorService stopped;
+		synchronized (this)
+		{
+			stopped = renderer;
+			renderer = null;
+		}
+
+		if (stopped != null)
+		{
+			stopped.shutdown();
+			try
+			{
+				stopped.awaitTermination(period * 2, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			render(true);
+		}
+	}
+
+	/**
+	 * Create the slice to publish phi on.
+	 *
+	 * @param grayImage The gray image of the slice.
+	 * @param contourColor Color of the contour.
+	 * @return A Slice object.
+	 */
+	public Slice createSlice(BufferedImage grayImage, Color contourColor)
+	{
+		return new Slice(grayImage, contourColor);
+	}
+
+	/**
+	 * Publish the latest phi of the evolution. Phi must not be modified afterwards.
+	 *
+	 * @param slice The slice of phi.
+	 * @param phi A Field2D object.
+	 */
+	public synchronized void publish(Slice slice, Field2D phi)
+	{
+		this.slice = slice;
+		this.phi = phi;
+	}
+
+	/**
+	 * Check whether the latest published phi has been rendered, e.g. before copying phi to
+	 * publish it.
+	 *
+	 * @return True if the latest phi has been rendered or nothing has been published.
+	 */
+	public synchronized boolean isRendered()
+	{
+		return phi == renderedPhi;
+	}
+
+	/**
+	 * Render the latest phi if it has not been rendered.
+	 *
+	 * @param isLast Whether this is the last frame, which is rendered into a new buffer if the
+	 *        window has not taken the previous frame yet, instead of waiting for the next tick.
+	 */
+	private void render(boolean isLast)
+	{
+		synchronized (renderLock)
+		{
+			final Slice currentSlice;
+			final Field2D currentPhi;
+			synchronized (this)
+			{
+				currentSlice = slice;
+				currentPhi = phi;
+			}
+
+			if (currentPhi == null || currentPhi == renderedPhi)
+			{
+				return;
+			}
+
+			// The buffer of the next frame is shown until the window takes the pending frame
+			final boolean isPending = pendingFrames.get() > 0;
+			if (isPending && !isLast)
+			{
+				return;
+			}
+			renderedPhi = currentPhi;
+
+			final int width = currentSlice.width;
+			final int height = currentSlice.height;
+
+			BufferedImage image = images[nextImage];
+			if (image == null || image.getWidth() != width || image.getHeight() != height
+					|| isPending)
+			{
+				image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				images[nextImage] = image;
+			}
+			nextImage ^= 1;
+
+			final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			final double[] data = currentPhi.getData();
+
+			System.arraycopy(currentSlice.rgb, 0, pixels, 0, pixels.length);
+
+			// A pixel lies on the contour if any of its 4-neighbours is on the other side
+			boolean inside;
+			for (int y = 1; y < height - 1; y++)
+			{
+				for (int idx = y * width + 1; idx < (y + 1) * width - 1; idx++)
+				{
+					inside = data[idx] >= BOUNDARY_VALUE;
+
+					if (inside != (data[idx - 1] >= BOUNDARY_VALUE)
+							|| inside != (data[idx + 1] >= BOUNDARY_VALUE)
+							|| inside != (data[idx - width] >= BOUNDARY_VALUE)
+							|| inside != (data[idx + width] >= BOUNDARY_VALUE))
+					{
+						pixels[idx] = currentSlice.contourRGB;
+					}
+				}
+			}
+
+			final BufferedImage frame = image;
+			pendingFrames.incrementAndGet();
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					customWindow.setOriginalImage(frame);
+					pendingFrames.decrementAndGet();
+				}
+			});
+		}
+	}
+
+}
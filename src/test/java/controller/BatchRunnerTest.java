@@ -0,0 +1,155 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import utils.BitMask3D;
+import utils.LSConstants.LevelsetType;
+import utils.LSConstants.ReinitMethod;
+
+public class BatchRunnerTest
+{
+
+	@Test
+	public void testParseEntry()
+	{
+		final BatchRunner runner = new BatchRunner("out", 1);
+
+		final BatchRunner.Entry entry =
+				runner.parseEntry("data/brain1.mnc\tgt=data/gt1.mnc;data/gt2.mnc\tvelocity=5000"
+						+ "\tlevelsetType=Texture\treinitMethod=FastSweeping\tnarrowBand=false");
+
+		assertEquals("data/brain1.mnc", entry.filePath);
+		assertEquals(2, entry.gtFilePathList.size());
+		assertEquals("data/gt2.mnc", entry.gtFilePathList.get(1));
+		assertEquals("out" + File.separator + "brain1", entry.resultDir);
+		assertEquals(5000, entry.uiOpts.getVelocity(), 0.0000001);
+		assertEquals(LevelsetType.Texture, entry.uiOpts.getLevelsetType());
+		assertEquals(ReinitMethod.FastSweeping, entry.uiOpts.getReinitMethod());
+		assertFalse(entry.uiOpts.isNarrowBand());
+		assertTrue(entry.uiOpts.getOutputMaskFile().endsWith("mask.tif"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOption()
+	{
+		new BatchRunner("out", 1).parseEntry("data/brain1.mnc\tspeed=3");
+	}
+
+	@Test
+	public void testRun() throws IOException
+	{
+		final File outputDir = Files.createTempDirectory("batch").toFile();
+
+		try
+		{
+			// The synthetic volumes are decoded already, the missing one fails to open
+			final Map<String, DataManager> dataManagers = new HashMap<String, DataManager>();
+			final BatchRunner runner = new BatchRunner(outputDir.getPath(), 2)
+			{
+				@Override
+				DataManager createDataManager(Entry entry, ImagePlus gtImgPlus)
+				{
+					if (!entry.filePath.startsWith("head"))
+					{
+						return super.createDataManager(entry, gtImgPlus);
+					}
+
+					try
+					{
+						final DataManager dataManager =
+								new DataManager(DataManagerTest.createSource(entry.filePath),
+										DataManagerTest.createGroundTruth(new BitMask3D(
+												DataManagerTest.WIDTH, DataManagerTest.HEIGHT,
+												DataManagerTest.DEPTH)), entry.resultDir);
+						synchronized (dataManagers)
+						{
+							dataManagers.put(entry.filePath, dataManager);
+						}
+						return dataManager;
+
+					} catch (IOException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+
+			final List<BatchRunner.Entry> entries = new ArrayList<BatchRunner.Entry>();
+			entries.add(runner.parseEntry("head1.mnc"));
+			entries.add(runner.parseEntry(new File(outputDir, "missing.mnc").getPath()));
+			entries.add(runner.parseEntry("head2.mnc\tholeFilling=true"));
+
+			assertEquals(1, runner.run(entries));
+
+			// The rows follow the manifest, whichever volume finishes first
+			final List<String> rows =
+					Files.readAllLines(new File(outputDir, "metrics.csv").toPath(),
+							StandardCharsets.UTF_8);
+			assertEquals(4, rows.size());
+			assertTrue(rows.get(0).startsWith("volume,slices,"));
+			assertTrue(rows.get(1).startsWith("head1.mnc," + DataManagerTest.WIDTH + ","));
+			assertEquals(entries.get(1).filePath + ",FAILED,,,,,,,", rows.get(2));
+			assertTrue(rows.get(3).startsWith("head2.mnc," + DataManagerTest.WIDTH + ","));
+			assertTrue(Double.parseDouble(rows.get(1).split(",")[3]) > 0);
+
+			// The mask stack is flipped vertically back to the volume as stored
+			final BitMask3D masks = dataManagers.get("head1.mnc").createMaskVolume();
+			final ImagePlus maskImgPlus = IJ.openImage(entries.get(0).uiOpts.getOutputMaskFile());
+			final ImageStack stack = maskImgPlus.getStack();
+			assertEquals(DataManagerTest.DEPTH, stack.getSize());
+
+			final int width = DataManagerTest.WIDTH;
+			final int height = DataManagerTest.HEIGHT;
+			int area = 0;
+			for (int z = 0; z < stack.getSize(); z++)
+			{
+				final byte[] pixels = (byte[]) stack.getPixels(z + 1);
+				for (int y = 0; y < height; y++)
+				{
+					for (int x = 0; x < width; x++)
+					{
+						final boolean isSet = pixels[(height - 1 - y) * width + x] != 0;
+						assertEquals(masks.get(x, y, z), isSet);
+						area += isSet ? 1 : 0;
+					}
+				}
+			}
+			assertTrue(area > 0);
+
+		} finally
+		{
+			delete(outputDir);
+		}
+	}
+
+	private static void delete(File file)
+	{
+		final File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
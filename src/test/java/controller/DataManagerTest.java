@@ -0,0 +1,182 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import model.Metrics;
+import model.SegmentResult;
+import model.UiOptions;
+import model.Volume;
+import model.VolumeSource;
+
+import org.junit.Test;
+
+import utils.BitMask2D;
+import utils.BitMask3D;
+import utils.LSConstants.ContourColor;
+import utils.LSConstants.HoleFillingMethod;
+
+public class DataManagerTest
+{
+
+	/** The width is the smallest size, so the volume is evolved in sagittal sections. */
+	static final int WIDTH = 40;
+	static final int HEIGHT = 90;
+	static final int DEPTH = 64;
+
+	private static final String FILE_PATH = "head.mnc";
+
+	/**
+	 * Whether a voxel lies in an ellipsoid around the center of the volume, off-center in y so
+	 * that a transposed mask does not match.
+	 */
+	private static boolean isInside(int x, int y, int z, double scale)
+	{
+		final double dx = (x - WIDTH / 2.0) / (WIDTH * 0.35 * scale);
+		final double dy = (y - HEIGHT * 0.45) / (HEIGHT * 0.35 * scale);
+		final double dz = (z - DEPTH / 2.0) / (DEPTH * 0.35 * scale);
+		return dx * dx + dy * dy + dz * dz <= 1;
+	}
+
+	/**
+	 * A volume of a bright ellipsoid on a dark background, as if decoded from the file path.
+	 */
+	static VolumeSource createSource(String filePath) throws IOException
+	{
+		final Volume volume = new Volume(WIDTH, HEIGHT, DEPTH, 0);
+
+		final short[] plane = new short[WIDTH * HEIGHT];
+		for (int z = 0; z < DEPTH; z++)
+		{
+			for (int y = 0; y < HEIGHT; y++)
+			{
+				for (int x = 0; x < WIDTH; x++)
+				{
+					plane[y * WIDTH + x] = (short) (isInside(x, y, z, 1) ? 1000 : 20);
+				}
+			}
+			volume.setPlane(z, plane);
+		}
+
+		final Map<String, Object> metadata = new HashMap<String, Object>();
+		metadata.put("/xspace step", "1");
+		metadata.put("/zspace step", "1");
+
+		return new VolumeSource(filePath, volume, "MINC", 16, metadata);
+	}
+
+	/**
+	 * A ground truth of axial slices, slightly smaller than the bright ellipsoid.
+	 */
+	static ImagePlus createGroundTruth(BitMask3D groundTruth)
+	{
+		final ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+
+		for (int z = 0; z < DEPTH; z++)
+		{
+			final byte[] pixels = new byte[WIDTH * HEIGHT];
+			for (int y = 0; y < HEIGHT; y++)
+			{
+				for (int x = 0; x < WIDTH; x++)
+				{
+					if (isInside(x, y, z, 0.9))
+					{
+						pixels[y * WIDTH + x] = (byte) 255;
+						groundTruth.set(x, y, z);
+					}
+				}
+			}
+			stack.addSlice("", new ByteProcessor(WIDTH, HEIGHT, pixels));
+		}
+
+		return new ImagePlus("Ground truth", stack);
+	}
+
+	@Test
+	public void testSagittalVolume() throws IOException
+	{
+		final File resultDir = Files.createTempDirectory("result").toFile();
+
+		try
+		{
+			final BitMask3D groundTruth = new BitMask3D(WIDTH, HEIGHT, DEPTH);
+
+			final DataManager dataManager =
+					new DataManager(createSource(FILE_PATH), createGroundTruth(groundTruth),
+							resultDir.getPath());
+			final UiOptions uiOpts = new UiOptions();
+			uiOpts.setContourColor(ContourColor.Yellow);
+			uiOpts.setHoleFilling(true);
+			uiOpts.setHoleFillingMethod(HoleFillingMethod.Volumetric);
+			dataManager.setUiOptions(uiOpts);
+			dataManager.loadMetadata(FILE_PATH);
+			dataManager.createSkullStripper(FILE_PATH);
+			dataManager.initZeroLS();
+
+			final SegmentResult segmentResult =
+					dataManager.evaluateMetrics(dataManager.evolveVolume());
+
+			// The sections are sagittal
+			assertEquals(WIDTH, segmentResult.getSliceCount());
+
+			// The contours are laid on the sections they were evolved on
+			for (int i = 0; i < WIDTH; i++)
+			{
+				final BufferedImage contour = ImageIO.read(new File(resultDir, (i + 1) + ".png"));
+				assertEquals(HEIGHT, contour.getWidth());
+				assertEquals(DEPTH, contour.getHeight());
+			}
+
+			// The filled masks are put back into the axial planes of the input
+			final BitMask3D masks = dataManager.createMaskVolume();
+			assertEquals(WIDTH, masks.getWidth());
+			assertEquals(HEIGHT, masks.getHeight());
+			assertEquals(DEPTH, masks.getDepth());
+
+			final List<BitMask2D> results = new ArrayList<BitMask2D>();
+			final List<BitMask2D> groundTruths = new ArrayList<BitMask2D>();
+			int area = 0;
+			for (int z = 0; z < DEPTH; z++)
+			{
+				results.add(masks.getSection(z, 0));
+				groundTruths.add(groundTruth.getSection(z, 0));
+				area += masks.count(z);
+			}
+			assertTrue(area > 0);
+
+			// The sections are evaluated against the ground truth of the same voxels
+			final Metrics expected = new Metrics(results, groundTruths);
+			final Metrics metrics = segmentResult.getMetrics();
+			assertEquals(expected.getTP(), metrics.getTP(), 0);
+			assertEquals(expected.getFP(), metrics.getFP(), 0);
+			assertEquals(expected.getFN(), metrics.getFN(), 0);
+			assertEquals(expected.getTN(), metrics.getTN(), 0);
+			assertEquals(WIDTH * HEIGHT * DEPTH,
+					metrics.getTP() + metrics.getFP() + metrics.getFN() + metrics.getTN(), 0);
+
+		} finally
+		{
+			for (File file : resultDir.listFiles())
+			{
+				file.delete();
+			}
+			resultDir.delete();
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package controller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import utils.Field2D;
+
+public class EvolutionMonitorTest
+{
+
+	private static final int SIZE = 40;
+
+	/**
+	 * Phi of a square of the given half side around the center of the grid.
+	 */
+	private Field2D createSquare(int halfSide)
+	{
+		final Field2D phi = new Field2D(SIZE, SIZE);
+
+		for (int y = 0; y < SIZE; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				final int distance = Math.max(Math.abs(x - SIZE / 2), Math.abs(y - SIZE / 2));
+				phi.set(x, y, distance <= halfSide ? 1 : -1);
+			}
+		}
+
+		return phi;
+	}
+
+	private int getArea(int halfSide)
+	{
+		return (2 * halfSide + 1) * (2 * halfSide + 1);
+	}
+
+	@Test
+	public void testRejectDivergingAttempt()
+	{
+		final EvolutionMonitor monitor = new EvolutionMonitor(createSquare(5), 50, -0.5, true);
+
+		// Within the allowed growth
+		assertFalse(monitor.check(createSquare(6), getArea(6)));
+
+		// Keeps growing beyond it
+		boolean isStopped = false;
+		for (int halfSide = 7; halfSide < 7 + EvolutionMonitor.REJECTION_CHECKS; halfSide++)
+		{
+			assertFalse(isStopped);
+			isStopped = monitor.check(createSquare(halfSide), getArea(halfSide));
+		}
+
+		assertTrue(isStopped);
+		assertTrue(monitor.isRejected());
+	}
+
+	@Test
+	public void testKeepRecoveringAttempt()
+	{
+		final EvolutionMonitor monitor = new EvolutionMonitor(createSquare(5), 50, -0.5, true);
+
+		// Too large, but shrinking back every other check
+		for (int i = 0; i < 4 * EvolutionMonitor.REJECTION_CHECKS; i++)
+		{
+			final int halfSide = i % 2 == 0 ? 9 : 8;
+			assertFalse(monitor.check(createSquare(halfSide), getArea(halfSide)));
+		}
+
+		assertFalse(monitor.isRejected());
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final EvolutionMonitor monitor = new EvolutionMonitor(createSquare(5), 50, -0.5, false);
+
+		// Never rejected when early rejection is disabled
+		for (int halfSide = 7; halfSide < 15; halfSide++)
+		{
+			assertFalse(monitor.check(createSquare(halfSide), getArea(halfSide)));
+		}
+
+		monitor.cancel();
+
+		assertTrue(monitor.isStopped());
+		assertFalse(monitor.isRejected());
+	}
+
+}
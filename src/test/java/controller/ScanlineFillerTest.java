@@ -0,0 +1,91 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ScanlineFillerTest
+{
+
+	/**
+	 * Parse rows of '#' (mask) and '.' (background) into an array indexed by [x][y].
+	 */
+	private byte[][] parse(String... rows)
+	{
+		final byte[][] array = new byte[rows[0].length()][rows.length];
+
+		for (int y = 0; y < rows.length; y++)
+		{
+			for (int x = 0; x < rows[y].length(); x++)
+			{
+				array[x][y] = rows[y].charAt(x) == '#' ? (byte) 40 : 0;
+			}
+		}
+
+		return array;
+	}
+
+	private void assertFilled(byte[][] expected, byte[][] actual)
+	{
+		for (int x = 0; x < expected.length; x++)
+		{
+			for (int y = 0; y < expected[0].length; y++)
+			{
+				assertEquals("(" + x + ", " + y + ")", expected[x][y], actual[x][y]);
+			}
+		}
+	}
+
+	@Test
+	public void testFillHoles()
+	{
+		// A hole wrapping around an island, which is not star-shaped from the center, and
+		// notches open to the background, which are not holes
+		final byte[][] array =
+				parse("..........",
+				      ".########.",
+				      ".#......#.",
+				      ".#.####.#.",
+				      ".#.#..#.#.",
+				      ".#.####.#.",
+				      ".#......#.",
+				      ".########.",
+				      ".#..#.#...",
+				      "..........");
+
+		final byte[][] expected =
+				parse("..........",
+				      ".########.",
+				      ".########.",
+				      ".########.",
+				      ".########.",
+				      ".########.",
+				      ".########.",
+				      ".########.",
+				      ".#..#.#...",
+				      "..........");
+
+		assertFilled(expected, new ScanlineFiller(array).getFilledArray());
+	}
+
+	@Test
+	public void testHoleTouchingDiagonally()
+	{
+		// The background is 4-connected, so a diagonal gap in the mask does not let it in
+		final byte[][] array = parse("#####", "#..##", "#.#.#", "##..#", "#####");
+
+		assertFilled(parse("#####", "#####", "#####", "#####", "#####"),
+				new ScanlineFiller(array).getFilledArray());
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertNull(new ScanlineFiller(null).getFilledArray());
+
+		final byte[][] array = parse(".....", ".....");
+		assertFilled(parse(".....", "....."), new ScanlineFiller(array).getFilledArray());
+	}
+
+}
@@ -0,0 +1,160 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VolumeFillerTest
+{
+
+	private List<byte[][]> createVolume(int width, int height, int depth)
+	{
+		final List<byte[][]> arrays = new ArrayList<byte[][]>();
+		for (int z = 0; z < depth; z++)
+		{
+			arrays.add(new byte[width][height]);
+		}
+		return arrays;
+	}
+
+	/**
+	 * Reference: breadth-first search of the 6-connected background from the border.
+	 */
+	private boolean[][][] findReached(List<byte[][]> arrays)
+	{
+		final int width = arrays.get(0).length;
+		final int height = arrays.get(0)[0].length;
+		final int depth = arrays.size();
+		final boolean[][][] reached = new boolean[width][height][depth];
+		final Deque<int[]> queue = new ArrayDeque<int[]>();
+
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				for (int z = 0; z < depth; z++)
+				{
+					final boolean isBorder =
+							x == 0 || y == 0 || z == 0 || x == width - 1 || y == height - 1
+									|| z == depth - 1;
+					if (isBorder && arrays.get(z)[x][y] <= 0)
+					{
+						reached[x][y][z] = true;
+						queue.add(new int[] {x, y, z});
+					}
+				}
+			}
+		}
+
+		final int[][] steps = { {1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+		while (!queue.isEmpty())
+		{
+			final int[] voxel = queue.poll();
+			for (int[] step : steps)
+			{
+				final int x = voxel[0] + step[0];
+				final int y = voxel[1] + step[1];
+				final int z = voxel[2] + step[2];
+				if (x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth
+						&& !reached[x][y][z] && arrays.get(z)[x][y] <= 0)
+				{
+					reached[x][y][z] = true;
+					queue.add(new int[] {x, y, z});
+				}
+			}
+		}
+
+		return reached;
+	}
+
+	@Test
+	public void testCavityClosedIn3D() throws Exception
+	{
+		// A hollow cube of mask, whose cavity is closed within every slice
+		final List<byte[][]> arrays = createVolume(7, 7, 7);
+		for (int z = 1; z < 6; z++)
+		{
+			for (int x = 1; x < 6; x++)
+			{
+				for (int y = 1; y < 6; y++)
+				{
+					final boolean isShell = x == 1 || y == 1 || z == 1 || x == 5 || y == 5 || z == 5;
+					arrays.get(z)[x][y] = isShell ? (byte) 40 : 0;
+				}
+			}
+		}
+
+		// Open the cavity at (3, 3) through the top plane of the cube
+		arrays.get(5)[3][3] = 0;
+		final int filled = new VolumeFiller(arrays).fill();
+
+		assertEquals(0, filled);
+		assertEquals(0, arrays.get(3)[3][3]);
+
+		// Close the opening, the cavity is now enclosed in 3D
+		arrays.get(5)[3][3] = 40;
+		assertEquals(27, new VolumeFiller(arrays).fill());
+		assertEquals(40, arrays.get(3)[3][3]);
+	}
+
+	@Test
+	public void testEmptyVolume() throws Exception
+	{
+		assertEquals(0, new VolumeFiller(new ArrayList<byte[][]>()).fill());
+		assertEquals(0, new VolumeFiller(createVolume(5, 5, 1)).fill());
+	}
+
+	@Test
+	public void testRandomVolume() throws Exception
+	{
+		final Random random = new Random(7);
+		final List<byte[][]> arrays = createVolume(23, 17, 31);
+		for (byte[][] array : arrays)
+		{
+			for (int x = 0; x < array.length; x++)
+			{
+				for (int y = 0; y < array[0].length; y++)
+				{
+					array[x][y] = random.nextInt(100) < 45 ? (byte) 40 : 0;
+				}
+			}
+		}
+
+		final boolean[][][] reached = findReached(arrays);
+
+		int expected = 0;
+		for (int z = 0; z < arrays.size(); z++)
+		{
+			for (int x = 0; x < 23; x++)
+			{
+				for (int y = 0; y < 17; y++)
+				{
+					if (arrays.get(z)[x][y] <= 0 && !reached[x][y][z])
+					{
+						expected++;
+					}
+				}
+			}
+		}
+
+		assertEquals(expected, new VolumeFiller(arrays).fill());
+
+		for (int z = 0; z < arrays.size(); z++)
+		{
+			for (int x = 0; x < 23; x++)
+			{
+				for (int y = 0; y < 17; y++)
+				{
+					assertEquals(reached[x][y][z] ? 0 : 40, arrays.get(z)[x][y]);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import utils.BitMask2D;
+
+public class MetricsAccumulatorTest
+{
+
+	private BitMask2D createRandomMask(Random random)
+	{
+		final boolean[][] array = new boolean[19][23];
+		for (int x = 0; x < 19; x++)
+		{
+			for (int y = 0; y < 23; y++)
+			{
+				array[x][y] = random.nextInt(3) > 0;
+			}
+		}
+		return BitMask2D.fromArray(array);
+	}
+
+	@Test
+	public void testAccumulate()
+	{
+		final Random random = new Random(13);
+		final List<BitMask2D> resultList = new ArrayList<BitMask2D>();
+		final List<BitMask2D> groundTruthList = new ArrayList<BitMask2D>();
+		for (int sliceNo = 0; sliceNo < 5; sliceNo++)
+		{
+			resultList.add(createRandomMask(random));
+			groundTruthList.add(createRandomMask(random));
+		}
+
+		// The slices arrive from the center outwards, and one of them twice
+		final MetricsAccumulator accumulator = new MetricsAccumulator(5);
+		accumulator.add(2, resultList.get(2), groundTruthList.get(2));
+		accumulator.add(3, resultList.get(0), groundTruthList.get(0));
+		for (int sliceNo : new int[] {3, 1, 4, 0})
+		{
+			accumulator.add(sliceNo, resultList.get(sliceNo), groundTruthList.get(sliceNo));
+		}
+
+		final Metrics expected = new Metrics(resultList, groundTruthList);
+		final Metrics metrics = accumulator.getMetrics();
+
+		assertEquals("", expected.getTP(), metrics.getTP(), 0.0001);
+		assertEquals("", expected.getTN(), metrics.getTN(), 0.0001);
+		assertEquals("", expected.getFP(), metrics.getFP(), 0.0001);
+		assertEquals("", expected.getFN(), metrics.getFN(), 0.0001);
+
+		final double[] jaccardSeries = accumulator.getJaccardSeries();
+		final double[] diceSeries = accumulator.getDiceSeries();
+		for (int sliceNo = 0; sliceNo < 5; sliceNo++)
+		{
+			final Metrics slice = new Metrics(resultList.get(sliceNo), groundTruthList.get(sliceNo));
+
+			assertEquals("", slice.getJaccard(), jaccardSeries[sliceNo], 0.0001);
+			assertEquals("", slice.getDice(), diceSeries[sliceNo], 0.0001);
+		}
+	}
+
+	@Test
+	public void testMissingSlice()
+	{
+		final Random random = new Random(17);
+		final MetricsAccumulator accumulator = new MetricsAccumulator(3);
+		accumulator.add(1, createRandomMask(random), createRandomMask(random));
+
+		final double[] jaccardSeries = accumulator.getJaccardSeries();
+
+		assertTrue("", Double.isNaN(jaccardSeries[0]));
+		assertTrue("", jaccardSeries[1] > 0);
+		assertTrue("", Double.isNaN(jaccardSeries[2]));
+	}
+
+}
@@ -5,9 +5,12 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
+import utils.BitMask2D;
+
 public class MetricsTest
 {
 	@Test
@@ -44,7 +47,7 @@ public class MetricsTest
 	@Test
 	public void testCalculate_Multi()
 	{
-		final List<boolean[][]> resultList = new ArrayList<boolean[][]>();
+		final List<BitMask2D> resultList = new ArrayList<BitMask2D>();
 		boolean[][] result1 =
 				new boolean[][] { {false, true, false}, {false, true, true}, {false, false, false}};
 		boolean[][] result2 =
@@ -52,12 +55,12 @@ public class MetricsTest
 		boolean[][] result3 =
 				new boolean[][] { {false, true, true}, {false, true, true}, {false, true, true}};
 
-		resultList.add(result1);
-		resultList.add(result2);
-		resultList.add(result3);
+		resultList.add(BitMask2D.fromArray(result1));
+		resultList.add(BitMask2D.fromArray(result2));
+		resultList.add(BitMask2D.fromArray(result3));
 
 
-		final List<boolean[][]> groundTruthList = new ArrayList<boolean[][]>();
+		final List<BitMask2D> groundTruthList = new ArrayList<BitMask2D>();
 
 		boolean[][] groundTruth1 =
 				new boolean[][] { {true, true, false}, {true, true, false}, {false, false, false}};
@@ -66,9 +69,9 @@ public class MetricsTest
 		boolean[][] groundTruth3 =
 				new boolean[][] { {true, true, false}, {true, true, false}, {false, false, false}};
 
-		groundTruthList.add(groundTruth1);
-		groundTruthList.add(groundTruth2);
-		groundTruthList.add(groundTruth3);
+		groundTruthList.add(BitMask2D.fromArray(groundTruth1));
+		groundTruthList.add(BitMask2D.fromArray(groundTruth2));
+		groundTruthList.add(BitMask2D.fromArray(groundTruth3));
 
 		final Metrics metrics = new Metrics(resultList, groundTruthList);
 
@@ -82,4 +85,58 @@ public class MetricsTest
 
 	}
 
+	@Test
+	public void testCalculate_Volume()
+	{
+		final Random random = new Random(11);
+		final List<BitMask2D> resultList = new ArrayList<BitMask2D>();
+		final List<BitMask2D> groundTruthList = new ArrayList<BitMask2D>();
+
+		int tp = 0;
+		int tn = 0;
+		int fp = 0;
+		int fn = 0;
+		for (int sliceNo = 0; sliceNo < 21; sliceNo++)
+		{
+			final boolean[][] result = new boolean[67][45];
+			final boolean[][] groundTruth = new boolean[67][45];
+
+			for (int x = 0; x < 67; x++)
+			{
+				for (int y = 0; y < 45; y++)
+				{
+					result[x][y] = random.nextBoolean();
+					groundTruth[x][y] = random.nextBoolean();
+
+					if (result[x][y])
+					{
+						if (groundTruth[x][y])
+						{
+							tp++;
+						} else
+						{
+							fp++;
+						}
+					} else if (groundTruth[x][y])
+					{
+						fn++;
+					} else
+					{
+						tn++;
+					}
+				}
+			}
+
+			resultList.add(BitMask2D.fromArray(result));
+			groundTruthList.add(BitMask2D.fromArray(groundTruth));
+		}
+
+		final Metrics metrics = new Metrics(resultList, groundTruthList);
+
+		assertEquals("", tp, metrics.getTP(), 0.0001);
+		assertEquals("", tn, metrics.getTN(), 0.0001);
+		assertEquals("", fp, metrics.getFP(), 0.0001);
+		assertEquals("", fn, metrics.getFN(), 0.0001);
+	}
+
 }
@@ -0,0 +1,47 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+
+import org.junit.Test;
+
+public class VolumeSourceTest
+{
+
+	@Test
+	public void testDecodeFlipped() throws FormatException
+	{
+		// 2x2 little-endian UINT16 plane: rows (1, 2) and (3, 4)
+		final byte[] bytes = new byte[] {1, 0, 2, 0, 3, 0, 4, 0};
+		final short[] plane = new short[4];
+
+		VolumeSource.decodePlane(bytes, 2, 2, FormatTools.UINT16, true, plane);
+
+		assertEquals(3, plane[0]);
+		assertEquals(4, plane[1]);
+		assertEquals(1, plane[2]);
+		assertEquals(2, plane[3]);
+	}
+
+	@Test
+	public void testDecodeSigned() throws FormatException
+	{
+		// Big-endian INT16 samples -1 and 300 in a single row
+		final byte[] bytes = new byte[] {(byte) 0xff, (byte) 0xff, 0x01, 0x2c};
+		final short[] plane = new short[2];
+
+		VolumeSource.decodePlane(bytes, 2, 1, FormatTools.INT16, false, plane);
+
+		assertEquals(32767, plane[0] & 0xffff);
+		assertEquals(33068, plane[1] & 0xffff);
+	}
+
+	@Test(expected = FormatException.class)
+	public void testUnsupportedType() throws FormatException
+	{
+		VolumeSource.decodePlane(new byte[16], 2, 2, FormatTools.FLOAT, true, new short[4]);
+	}
+
+}
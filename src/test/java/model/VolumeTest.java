@@ -0,0 +1,143 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import utils.PixelAccess;
+
+public class VolumeTest
+{
+
+	private static final int WIDTH = 4;
+	private static final int HEIGHT = 3;
+	private static final int DEPTH = 2;
+
+	/**
+	 * A volume whose stored value encodes the coordinates of the voxel.
+	 */
+	private Volume createVolume(int offset) throws IOException
+	{
+		final Volume volume = new Volume(WIDTH, HEIGHT, DEPTH, offset);
+
+		final short[] plane = new short[WIDTH * HEIGHT];
+		for (int z = 0; z < DEPTH; z++)
+		{
+			for (int y = 0; y < HEIGHT; y++)
+			{
+				for (int x = 0; x < WIDTH; x++)
+				{
+					plane[y * WIDTH + x] = (short) (offset + 100 * z + 10 * y + x);
+				}
+			}
+			volume.setPlane(z, plane);
+		}
+
+		return volume;
+	}
+
+	@Test
+	public void testPlaneRoundTrip() throws IOException
+	{
+		final Volume volume = createVolume(0);
+
+		final short[] plane = volume.getPlane(1, new short[WIDTH * HEIGHT]);
+
+		assertEquals(100, plane[0]);
+		assertEquals(123, plane[2 * WIDTH + 3]);
+	}
+
+	@Test
+	public void testOrientations() throws IOException
+	{
+		final Volume volume = createVolume(32768);
+
+		// Axial: (x, y) of section z
+		assertEquals(112, volume.getPixelValue(2, 1, 1, 0));
+
+		// Coronal: (x, z) of section y
+		assertEquals(WIDTH, volume.getWidth(1));
+		assertEquals(123, volume.getPixelValue(3, 1, 2, 1));
+
+		// Sagittal: (y, z) of section x
+		assertEquals(HEIGHT, volume.getWidth(2));
+		assertEquals(121, volume.getPixelValue(2, 1, 1, 2));
+	}
+
+	@Test
+	public void testSectionView() throws IOException
+	{
+		final Volume volume = createVolume(0);
+
+		final BufferedImage view = volume.createSectionView(0, 2);
+
+		assertEquals(HEIGHT, view.getWidth());
+		assertEquals(DEPTH, view.getHeight());
+
+		for (int y = 0; y < DEPTH; y++)
+		{
+			for (int x = 0; x < HEIGHT; x++)
+			{
+				assertEquals(volume.getPixelValue(x, y, 0, 2), view.getRaster().getSample(x, y, 0));
+			}
+		}
+	}
+
+	@Test
+	public void testSectionSamples() throws IOException
+	{
+		final Volume volume = createVolume(128);
+
+		for (int orient = 0; orient < 3; orient++)
+		{
+			final BufferedImage view = volume.createSectionView(1, orient);
+			final int[] samples = PixelAccess.getSamples(view, null);
+
+			for (int y = 0; y < view.getHeight(); y++)
+			{
+				for (int x = 0; x < view.getWidth(); x++)
+				{
+					assertEquals(volume.getPixelValue(x, y, 1, orient),
+							samples[y * view.getWidth() + x]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSectionViewReadOnly() throws IOException
+	{
+		createVolume(0).createSectionView(0, 0).getRaster().setSample(0, 0, 0, 1);
+	}
+
+	@Test
+	public void testReorient() throws IOException
+	{
+		final Volume volume = createVolume(128);
+
+		for (int orient = 1; orient < 3; orient++)
+		{
+			final Volume reoriented = volume.reorient(orient);
+
+			assertEquals(volume.getWidth(orient), reoriented.getWidth(0));
+			assertEquals(volume.getHeight(orient), reoriented.getHeight(0));
+			assertEquals(volume.getDepth(orient), reoriented.getDepth(0));
+
+			for (int index = 0; index < volume.getDepth(orient); index++)
+			{
+				for (int y = 0; y < volume.getHeight(orient); y++)
+				{
+					for (int x = 0; x < volume.getWidth(orient); x++)
+					{
+						assertEquals(volume.getPixelValue(x, y, index, orient),
+								reoriented.getPixelValue(x, y, index, 0));
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -1,12 +1,16 @@
 package texture;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.awt.Point;
 import java.util.Map;
 
 import org.junit.Test;
 
+import utils.Field2D;
+
 public class GLCMTest
 {
 
@@ -37,7 +41,7 @@ public class GLCMTest
 						{1.4251, 3.6858, 4.7161, 5.8420, 3.4021, 5.1082, 4.2507, 3.5207, 2.3125,
 								5.4027}};
 
-		GLCM glcm = new GLCM(testImg, 8, 1, 0, 0, 7, 4);
+		GLCM glcm = new GLCM(testImg, 8, 1, 0, 0, 7, 4, true);
 
 		Map<Point, double[][]> glcmMap = glcm.getGLCMMap();
 
@@ -48,10 +52,10 @@ public class GLCMTest
 		assertEquals(4.0 / 12, glcmMat00[7][1], 0.0001);
 
 		final GLCMFeatures glcmFeatures = glcm.getGLCMFeatures();
-		final double[][] energy = glcmFeatures.getEnergy();
-		final double[][] contrast = glcmFeatures.getContrast();
-		final double[][] entropy = glcmFeatures.getEntropy();
-		final double[][] homogenity = glcmFeatures.getHomogenity();
+		final Field2D energy = glcmFeatures.getEnergy();
+		final Field2D contrast = glcmFeatures.getContrast();
+		final Field2D entropy = glcmFeatures.getEntropy();
+		final Field2D homogenity = glcmFeatures.getHomogenity();
 
 
 		double entropyTemp = 0;
@@ -63,18 +67,44 @@ public class GLCMTest
 		{
 			for (int x = 0; x < glcmMat00[0].length; x++)
 			{
-				entropyTemp -= glcmMat00[y][x] * Math.log(glcmMat00[y][x]);
+				if (glcmMat00[y][x] > 0)
+				{
+					entropyTemp -= glcmMat00[y][x] * Math.log(glcmMat00[y][x]);
+				}
 				energyTemp += glcmMat00[y][x] * glcmMat00[y][x];
 				contrastTemp += (y - x) * (y - x) * glcmMat00[y][x];
 				homogenityTemp += glcmMat00[y][x] / (1 + (y - x) * (y - x));
 			}
 		}
 
-		assertEquals(energyTemp, energy[0][0], 0.0001);
-		assertEquals(entropyTemp, entropy[0][0], 0.0001);
-		assertEquals(contrastTemp, contrast[0][0], 0.0001);
-		assertEquals(homogenityTemp, homogenity[0][0], 0.0001);
+		assertEquals(energyTemp, energy.get(0, 0), 0.0001);
+		assertEquals(entropyTemp, entropy.get(0, 0), 0.0001);
+		assertEquals(contrastTemp, contrast.get(0, 0), 0.0001);
+		assertEquals(homogenityTemp, homogenity.get(0, 0), 0.0001);
+
+	}
+
+	@Test
+	public void testFeaturesWithoutMatrices()
+	{
+		final double[][] testImg = new double[12][14];
+		for (int y = 0; y < testImg.length; y++)
+		{
+			for (int x = 0; x < testImg[0].length; x++)
+			{
+				testImg[y][x] = (x * 7 + y * 13) % 11;
+			}
+		}
+
+		final GLCM kept = new GLCM(testImg, 8, 1, 0, 0, 7, 4, true);
+		final GLCM streamed = new GLCM(testImg, 8, 1, 0, 0, 7, 4);
+
+		assertNull(streamed.getGLCMMap());
 
+		assertArrayEquals(kept.getGLCMFeatures().getEnergy().getData(), streamed
+				.getGLCMFeatures().getEnergy().getData(), 0);
+		assertArrayEquals(kept.getGLCMFeatures().getEntropy().getData(), streamed
+				.getGLCMFeatures().getEntropy().getData(), 0);
 	}
 
 }
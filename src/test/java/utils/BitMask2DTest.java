@@ -0,0 +1,70 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BitMask2DTest
+{
+
+	@Test
+	public void testFromField()
+	{
+		final Random random = new Random(3);
+		final Field2D phi = new Field2D(13, 11);
+		for (int idx = 0; idx < phi.getData().length; idx++)
+		{
+			phi.getData()[idx] = random.nextDouble() - 0.5;
+		}
+
+		final BitMask2D mask = BitMask2D.fromField(phi, 0);
+		final boolean[][] expected = LSUtil.convertBoolAry(phi, 0);
+
+		int area = 0;
+		for (int x = 0; x < 13; x++)
+		{
+			for (int y = 0; y < 11; y++)
+			{
+				assertEquals(expected[x][y], mask.get(x, y));
+				area += expected[x][y] ? 1 : 0;
+			}
+		}
+		assertEquals(area, mask.count());
+	}
+
+	@Test
+	public void testFindContour()
+	{
+		final Random random = new Random(5);
+		final byte[][] array = new byte[37][29];
+		for (int x = 4; x < 30; x++)
+		{
+			for (int y = 3; y < 25; y++)
+			{
+				array[x][y] = random.nextInt(10) < 8 ? (byte) 40 : 0;
+			}
+		}
+
+		final BitMask2D contour = BitMask2D.fromArray(array).findContour();
+
+		for (int x = 0; x < 37; x++)
+		{
+			for (int y = 0; y < 29; y++)
+			{
+				final boolean isBorder = x == 0 || y == 0 || x == 36 || y == 28;
+				final boolean expected =
+						!isBorder
+								&& 4 * array[x][y] != array[x - 1][y] + array[x + 1][y]
+										+ array[x][y - 1] + array[x][y + 1];
+
+				assertEquals(expected, contour.get(x, y));
+			}
+		}
+
+		// No contour bits beyond the last pixel
+		assertEquals(BitMask2D.fromArray(contour.toByteArray((byte) 1)).count(), contour.count());
+	}
+
+}
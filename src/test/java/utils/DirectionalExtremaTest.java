@@ -0,0 +1,81 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DirectionalExtremaTest
+{
+
+	private static final int WIDTH = 37;
+	private static final int HEIGHT = 29;
+
+	private short[] createInput()
+	{
+		final Random random = new Random(7);
+		final short[] input = new short[WIDTH * HEIGHT];
+
+		for (int idx = 0; idx < input.length; idx++)
+		{
+			input[idx] = (short) random.nextInt(1000);
+		}
+
+		return input;
+	}
+
+	@Test
+	public void testAxisDirections()
+	{
+		final short[] input = createInput();
+		final DirectionalExtrema extrema = new DirectionalExtrema(WIDTH, HEIGHT, 16, 6, 4, input);
+
+		final int east = extrema.getDirection(1, 0);
+		final int south = extrema.getDirection(0, 1);
+
+		for (int y = 1; y < HEIGHT; y++)
+		{
+			for (int x = 1; x < WIDTH; x++)
+			{
+				int min = Integer.MAX_VALUE;
+				for (int i = 0; i < 6 && x + i < WIDTH; i++)
+				{
+					min = Math.min(min, input[y * WIDTH + x + i]);
+				}
+
+				int max = Integer.MIN_VALUE;
+				for (int i = 0; i < 4 && y + i < HEIGHT; i++)
+				{
+					max = Math.max(max, input[(y + i) * WIDTH + x]);
+				}
+
+				assertEquals(min, extrema.getMin(east, y * WIDTH + x));
+				assertEquals(max, extrema.getMax(south, y * WIDTH + x));
+			}
+		}
+	}
+
+	@Test
+	public void testAllDirectionsContainPixel()
+	{
+		final short[] input = createInput();
+		final DirectionalExtrema extrema = new DirectionalExtrema(WIDTH, HEIGHT, 16, 9, 5, input);
+
+		for (int k = 0; k < 16; k++)
+		{
+			for (int y = 1; y < HEIGHT; y++)
+			{
+				for (int x = 1; x < WIDTH; x++)
+				{
+					final int idx = y * WIDTH + x;
+
+					assertTrue(extrema.getMin(k, idx) <= input[idx]);
+					assertTrue(extrema.getMax(k, idx) >= input[idx]);
+				}
+			}
+		}
+	}
+
+}
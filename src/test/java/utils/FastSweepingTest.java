@@ -0,0 +1,56 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FastSweepingTest
+{
+
+	@Test
+	public void testReinitialize()
+	{
+		final int size = 64;
+		final Field2D phi = new Field2D(size, size);
+
+		// A circle whose phi is not a distance function
+		for (int x = 0; x < size; x++)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				double d = 20 - Math.sqrt((x - 31.5) * (x - 31.5) + (y - 30.2) * (y - 30.2));
+				phi.set(x, y, d > 0 ? 0.2 * d : 3 * d);
+			}
+		}
+
+		final Field2D result = new FastSweeping(size, size).reinitialize(phi);
+
+		for (int x = 0; x < size; x++)
+		{
+			for (int y = 0; y < size; y++)
+			{
+				double d = 20 - Math.sqrt((x - 31.5) * (x - 31.5) + (y - 30.2) * (y - 30.2));
+
+				assertTrue(d * result.get(x, y) >= 0);
+
+				if (Math.abs(d) < 3)
+				{
+					assertEquals(d, result.get(x, y), 0.6);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testReinitializeWithoutZeroLevelSet()
+	{
+		final Field2D phi = new Field2D(2, 2, new double[] {-2, -3, -4, -5});
+
+		final Field2D result = new FastSweeping(2, 2).reinitialize(phi);
+
+		assertEquals(-2, result.get(0, 0), 0.0000001);
+		assertEquals(-5, result.get(1, 1), 0.0000001);
+	}
+
+}
@@ -0,0 +1,48 @@
+package utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class Field2DTest
+{
+
+	@Test
+	public void testRowMajorLayout()
+	{
+		final Field2D field = new Field2D(3, 2);
+		field.set(2, 1, 7);
+
+		assertEquals(5, field.index(2, 1));
+		assertEquals(7, field.getData()[5], 0.0000001);
+	}
+
+	@Test
+	public void testArrayConversion()
+	{
+		final double[][] array = { {1, 2}, {3, 4}, {5, 6}};
+
+		final Field2D field = Field2D.fromArray(array);
+
+		assertEquals(3, field.getWidth());
+		assertEquals(2, field.getHeight());
+		assertEquals(4, field.get(1, 1), 0.0000001);
+
+		final double[][] result = field.toArray();
+
+		for (int x = 0; x < 3; x++)
+		{
+			for (int y = 0; y < 2; y++)
+			{
+				assertEquals(array[x][y], result[x][y], 0.0000001);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizeMismatch()
+	{
+		new Field2D(3, 2, new double[5]);
+	}
+
+}
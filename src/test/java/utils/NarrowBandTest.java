@@ -0,0 +1,219 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NarrowBandTest
+{
+
+	private static final double VELOCITY = 0.05 * 255 * 255;
+
+	private static final double TOLERANCE = 0.1;
+
+	private Field2D createCircle(int width, int height, double centerX, double radius)
+	{
+		final Field2D phi = new Field2D(width, height);
+
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				phi.set(x, y, radius - Math.sqrt((x - centerX) * (x - centerX) + (y - 20) * (y - 20)));
+			}
+		}
+
+		return phi;
+	}
+
+	@Test
+	public void testRebuild()
+	{
+		final Calculator calculator = new Calculator(40, 40, 1, 0.5);
+		final Field2D phi = createCircle(40, 40, 20, 10);
+
+		final NarrowBand band = calculator.createNarrowBand();
+		band.rebuild(phi);
+
+		final double[] deltaEps = calculator.calculateHEpsilonAndDeltaEpsilon3(phi).getData();
+
+		int count = 0;
+		for (int idx = 0; idx < deltaEps.length; idx++)
+		{
+			if (deltaEps[idx] > 0)
+			{
+				count++;
+			}
+		}
+
+		assertEquals(count, band.size());
+
+		for (int i = 0; i < band.size(); i++)
+		{
+			assertEquals(deltaEps[band.getIndex(i)], band.getDelta(i), 0.0000001);
+		}
+	}
+
+	@Test
+	public void testUpdate()
+	{
+		final Calculator calculator = new Calculator(40, 40, 1, 0.5);
+
+		final NarrowBand band = calculator.createNarrowBand();
+		band.update(createCircle(40, 40, 20, 10));
+
+		// Move the circle by one pixel
+		final Field2D moved = createCircle(40, 40, 21, 10);
+		band.update(moved);
+
+		final NarrowBand rebuilt = calculator.createNarrowBand();
+		rebuilt.rebuild(moved);
+
+		assertEquals(rebuilt.size(), band.size());
+
+		for (int i = 0; i < band.size(); i++)
+		{
+			assertTrue(Math.abs(moved.getData()[band.getIndex(i)]) < 1.5);
+		}
+	}
+
+	@Test
+	public void testMeanChange()
+	{
+		final Calculator calculator = new Calculator(40, 40, 1, 0.5);
+		final Field2D phi = createCircle(40, 40, 20, 10);
+		final Field2D phi0 = phi.copy();
+
+		final NarrowBand band = calculator.createNarrowBand();
+		band.update(phi);
+
+		// Without force the band keeps its values
+		calculator.updatePhi(phi, band, new double[band.size()]);
+		assertEquals(0, calculator.calculateMeanChange(phi, band), 0);
+
+		for (int i = 0; i < phi.getData().length; i++)
+		{
+			phi.getData()[i] += 0.25;
+		}
+
+		// The band and delta_epsilon cover the same pixels
+		assertEquals(0.25, calculator.calculateMeanChange(phi, band), 0.0000001);
+		assertEquals(0.25, calculator.calculateMeanChange(phi0, phi,
+				calculator.calculateHEpsilonAndDeltaEpsilon3(phi0)), 0.0000001);
+	}
+
+	@Test
+	public void testUpdatePhi()
+	{
+		final short[] image = createDisk(60, 60, 18);
+		final Calculator full = new Calculator(60, 60, VELOCITY, 0.5);
+		final Calculator banded = new Calculator(60, 60, VELOCITY, 0.5);
+		final NarrowBand band = banded.createNarrowBand();
+
+		Field2D phi = createCircle(60, 60, 30, 30, 8);
+		final Field2D bandPhi = phi.copy();
+
+		Field2D deltaEps, force;
+		for (int iter = 0; iter < 20; iter++)
+		{
+			deltaEps = full.calculateHEpsilonAndDeltaEpsilon3(phi);
+			force = full.calculateImageForce(phi, deltaEps, image, 20, 20, 200, 200,
+					LSConstants.LevelsetType.Model, null, 0);
+			phi = full.calculatePhiNew2(phi, deltaEps, force);
+
+			band.update(bandPhi);
+			banded.updatePhi(bandPhi, band, banded.calculateImageForce(bandPhi, band, image, 20, 20,
+					200, 200, LSConstants.LevelsetType.Model, null, 0));
+		}
+
+		assertArrayEquals(phi.getData(), bandPhi.getData(), 0);
+	}
+
+	@Test
+	public void testReinitialize()
+	{
+		for (LSConstants.ReinitMethod method : LSConstants.ReinitMethod.values())
+		{
+			final short[] image = createDisk(60, 60, 18);
+			final Calculator full = new Calculator(60, 60, VELOCITY, 0.5);
+			final Calculator banded = new Calculator(60, 60, VELOCITY, 0.5);
+			full.setReinitMethod(method);
+			banded.setReinitMethod(method);
+			final NarrowBand band = banded.createNarrowBand();
+
+			Field2D phi = createCircle(60, 60, 30, 30, 8);
+			final Field2D bandPhi = phi.copy();
+			final int area = BitMask2D.fromField(phi, -0.5).count();
+
+			Field2D deltaEps, force;
+			for (int iter = 0; iter < 40; iter++)
+			{
+				deltaEps = full.calculateHEpsilonAndDeltaEpsilon3(phi);
+				force = full.calculateImageForce(phi, deltaEps, image, 20, 20, 200, 200,
+						LSConstants.LevelsetType.Model, null, 0);
+				phi = full.reinitialize(full.calculatePhiNew2(phi, deltaEps, force));
+
+				band.update(bandPhi);
+				banded.updatePhi(bandPhi, band, banded.calculateImageForce(bandPhi, band, image, 20,
+						20, 200, 200, LSConstants.LevelsetType.Model, null, 0));
+				banded.reinitialize(bandPhi, band);
+			}
+
+			// The contour has moved the same way
+			final BitMask2D mask = BitMask2D.fromField(phi, -0.5);
+			assertTrue(mask.count() != area);
+			for (int i = 0; i < mask.getWordCount(); i++)
+			{
+				assertEquals(mask.getWord(i), BitMask2D.fromField(bandPhi, -0.5).getWord(i));
+			}
+
+			// Fast sweeping solves the tube exactly as the grid, whereas Sussman's iterations
+			// only approach the distance around the contour
+			band.rebuild(bandPhi);
+			for (int i = 0; i < band.size(); i++)
+			{
+				assertEquals(phi.getData()[band.getIndex(i)], bandPhi.getData()[band.getIndex(i)],
+						LSConstants.ReinitMethod.FastSweeping == method ? 0 : TOLERANCE);
+			}
+		}
+	}
+
+	private Field2D createCircle(int width, int height, double centerX, double centerY, double radius)
+	{
+		final Field2D phi = new Field2D(width, height);
+
+		for (int x = 0; x < width; x++)
+		{
+			for (int y = 0; y < height; y++)
+			{
+				phi.set(x, y, radius
+						- Math.sqrt((x - centerX) * (x - centerX) + (y - centerY) * (y - centerY)));
+			}
+		}
+
+		return phi;
+	}
+
+	/**
+	 * A bright disk at the center of a dark image, in row-major order.
+	 */
+	private short[] createDisk(int width, int height, double radius)
+	{
+		final short[] image = new short[width * height];
+
+		for (int y = 0, idx = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++, idx++)
+			{
+				final double dx = x - width / 2;
+				final double dy = y - height / 2;
+				image[idx] = (short) (dx * dx + dy * dy <= radius * radius ? 200 : 20);
+			}
+		}
+
+		return image;
+	}
+
+}
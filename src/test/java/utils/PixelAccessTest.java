@@ -0,0 +1,92 @@
+package utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+public class PixelAccessTest
+{
+
+	private static final int WIDTH = 5;
+	private static final int HEIGHT = 3;
+
+	private BufferedImage createImage(int imageType, int scale)
+	{
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, imageType);
+		final WritableRaster raster = image.getRaster();
+
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			for (int x = 0; x < WIDTH; x++)
+			{
+				raster.setSample(x, y, 0, scale * (y * WIDTH + x));
+			}
+		}
+
+		return image;
+	}
+
+	private void assertSamples(BufferedImage image, int[] samples)
+	{
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			for (int x = 0; x < WIDTH; x++)
+			{
+				assertEquals(image.getRaster().getSample(x, y, 0), samples[y * WIDTH + x]);
+			}
+		}
+	}
+
+	@Test
+	public void testGetSamplesUShort()
+	{
+		final BufferedImage image = createImage(BufferedImage.TYPE_USHORT_GRAY, 4000);
+
+		assertSamples(image, PixelAccess.getSamples(image, null));
+	}
+
+	@Test
+	public void testGetSamplesByte()
+	{
+		final BufferedImage image = createImage(BufferedImage.TYPE_BYTE_GRAY, 17);
+
+		assertSamples(image, PixelAccess.getSamples(image, new int[WIDTH * HEIGHT]));
+	}
+
+	@Test
+	public void testGetSamplesFallback()
+	{
+		// Packed pixels and sub-images are read through the raster
+		final BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 1000);
+		assertSamples(image, PixelAccess.getSamples(image, null));
+
+		final BufferedImage subImage =
+				createImage(BufferedImage.TYPE_USHORT_GRAY, 1).getSubimage(1, 1, 3, 2);
+		assertArrayEquals(new int[] {6, 7, 8, 11, 12, 13}, PixelAccess.getSamples(subImage, null));
+	}
+
+	@Test
+	public void testSetSamples()
+	{
+		final int[] samples = new int[WIDTH * HEIGHT];
+		for (int idx = 0; idx < samples.length; idx++)
+		{
+			samples[idx] = 3000 * idx;
+		}
+
+		final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
+		PixelAccess.setSamples(image, samples);
+		assertSamples(image, samples);
+
+		// Truncated to the data type as by Raster.setSample
+		final BufferedImage byteImage =
+				new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		PixelAccess.setSamples(byteImage, samples);
+		assertEquals(3000 & 0xff, byteImage.getRaster().getSample(1, 0, 0));
+	}
+
+}